@@ -1,45 +1,92 @@
 package bndtools.bndplugins.repo.git;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 
+import org.eclipse.jgit.api.AddCommand;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeResult;
 import org.eclipse.jgit.api.MergeResult.MergeStatus;
 import org.eclipse.jgit.api.PullResult;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.Coordinator;
+import org.osgi.service.log.LogService;
 
+import aQute.bnd.deployer.http.DefaultURLConnector;
 import aQute.bnd.deployer.repository.LocalIndexedRepo;
 import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
+import aQute.bnd.filerepo.FileRepo;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Verifier;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.url.TaggedData;
+import aQute.bnd.service.url.URLConnector;
+import aQute.bnd.version.Version;
 import aQute.lib.io.IO;
 import aQute.libg.glob.Glob;
 
-public class GitOBRRepo extends LocalIndexedRepo {
+/**
+ * An indexed repository that is stored in a Git repository. The repository is served from the local clone as soon as it
+ * is configured, while the remote repository is fetched in the background; the repository listeners are notified when
+ * new content has been merged.
+ */
+public class GitOBRRepo extends LocalIndexedRepo implements Closeable {
 
     public static final String PROP_LOCAL_SUB_DIR = "sub";
     public static final String PROP_GIT_REPO_XML_URI = "git-repo-xml-uri";
     public static final String PROP_GIT_URI = "git-uri";
     public static final String PROP_GIT_PUSH_URI = "git-push-uri";
     public static final String PROP_GIT_BRANCH = "git-branch";
+    public static final String PROP_GIT_FETCH_INTERVAL = "git-fetch-interval";
+    public static final String PROP_GIT_SINGLE_BRANCH = "git-single-branch";
 
     private static final String CONFIG_FILE_LIST = "configs";
     private static final String PREFIX_PATTERN = "pattern.";
     private static final String PREFIX_USER = "uid.";
     private static final String PREFIX_PASSWORD = "pwd.";
+    private static final String REMOTE_INDEX_CACHE_DIR = "bndtools-index-cache";
+
+    private static final ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "GitOBRRepo Updater");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     private boolean pretty = false;
+    private boolean overwrite = true;
 
     protected File gitRootDir;
 
@@ -55,6 +102,22 @@ public class GitOBRRepo extends LocalIndexedRepo {
     private final AtomicBoolean configFileInited = new AtomicBoolean(false);
     private final List<Mapping> mappings = Collections.synchronizedList(new LinkedList<Mapping>());
 
+    // Files put but not yet committed, mapped to a backup of the bundle they replaced or to null if they are new
+    // @GuardedBy("this")
+    private final Map<File,File> pendingFiles = new LinkedHashMap<File,File>();
+    // @GuardedBy("this")
+    private boolean pulledInCoordination = false;
+    // The commit the pending files were put on, which the clone is reset to if they cannot be committed and pushed
+    // @GuardedBy("this")
+    private ObjectId putHead = null;
+    // @GuardedBy("this")
+    private ScheduledFuture< ? > updates = null;
+    // @GuardedBy("this")
+    private long fetchInterval = 0;
+
+    // Serialises the fetches of the background updates and of puts, without blocking readers of the repository
+    private final Object fetchLock = new Object();
+
     @Override
     public synchronized void setProperties(Map<String,String> map) {
 
@@ -92,10 +155,20 @@ public class GitOBRRepo extends LocalIndexedRepo {
         if (!gitRootDir.isDirectory())
             throw new IllegalArgumentException(String.format("Local path '%s' does not exist or is not a directory.", localDirPath));
 
+        boolean singleBranch = "true".equalsIgnoreCase(map.get(PROP_GIT_SINGLE_BRANCH));
+
+        String fetchIntervalStr = map.get(PROP_GIT_FETCH_INTERVAL);
+        try {
+            fetchInterval = fetchIntervalStr != null ? Long.parseLong(fetchIntervalStr.trim()) : 0;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Attribute '%s' of GitOBRRepo plugin must be a number of seconds: %s", PROP_GIT_FETCH_INTERVAL, fetchIntervalStr));
+        }
+
         CredentialsProvider.setDefault(new GitCredentialsProvider(this));
 
         try {
-            repository = GitUtils.getRepository(gitRootDir, gitBranch, gitUri, gitPushUri);
+            // Only clone here; an existing clone is served as it is and updated in the background
+            repository = GitUtils.getRepository(gitRootDir, gitBranch, gitUri, gitPushUri, singleBranch, false);
         } catch (Exception e) {
             throw new IllegalArgumentException(String.format("Cannot setup GIT repository: '%s' - %s", gitRootDir.getAbsolutePath(), e.getMessage()), e);
         }
@@ -117,7 +190,9 @@ public class GitOBRRepo extends LocalIndexedRepo {
         super.setProperties(map);
 
         pretty = "true".equalsIgnoreCase(map.get(PROP_PRETTY));
+        overwrite = map.get(PROP_OVERWRITE) == null ? true : Boolean.parseBoolean(map.get(PROP_OVERWRITE));
 
+        scheduleUpdates(fetchInterval);
     }
 
     private static String escape(String url) {
@@ -128,44 +203,41 @@ public class GitOBRRepo extends LocalIndexedRepo {
         return urli;
     }
 
+    /**
+     * Put a bundle into the repository and push it to the remote Git repository.
+     * <p>
+     * When the put is made within a coordination of the {@link Coordinator} registered with the workspace, the remote
+     * repository is only pulled before the first put of the coordination, and the bundles are committed and pushed
+     * together once the coordination ends, after the index has been updated. Begin a coordination around a series of
+     * puts to avoid a pull, commit, push and index update for every bundle.
+     * </p>
+     */
     @Override
     public synchronized PutResult put(InputStream stream, PutOptions options) throws Exception {
         init();
 
+        Coordinator coordinator = (registry != null) ? registry.getPlugin(Coordinator.class) : null;
+        boolean coordinated = coordinator != null && coordinator.addParticipant(this);
+
         try {
             repository.incrementOpen();
 
             Git git = Git.wrap(repository);
 
-            // Pull remote repository
-            PullResult pullResult = git.pull().call();
-
-            // Check result
-            if (pullResult.getMergeResult().getMergeStatus() == MergeStatus.CONFLICTING || pullResult.getMergeResult().getMergeStatus() == MergeStatus.FAILED) {
-
-                // TODO: How to report failure
-                throw new RuntimeException(String.format("Failed to merge changes from %s", gitUri));
+            // Pull remote repository, once per coordination
+            if (!coordinated || !pulledInCoordination) {
+                synchronized (fetchLock) {
+                    pull(git);
+                }
+                pulledInCoordination = coordinated;
+                putHead = repository.resolve(Constants.HEAD);
             }
 
             // TODO: Check if jar already exists, is it ok to overwrite in all repositories?
 
             PutResult result = super.put(stream, options);
-            if (result.artifact != null) {
-                File newFile = new File(result.artifact);
-
-                // Add, Commit and Push
-                for (IRepositoryContentProvider provider : generatingProviders) {
-                    if (!provider.supportsGeneration())
-                        continue;
-                    git.add().addFilepattern(getRelativePath(gitRootDir, newFile)).addFilepattern(getRelativePath(gitRootDir, new File(provider.getDefaultIndexName(pretty)))).call();
-                }
-                git.commit().setMessage("bndtools added bundle : " + getRelativePath(gitRootDir, newFile)).call();
-                git.push().setCredentialsProvider(CredentialsProvider.getDefault()).call();
-
-                // Re-read the index
-                reset();
-                init();
-            }
+            if (result.artifact != null && !coordinated)
+                finishPut(git);
 
             return result;
         } finally {
@@ -175,6 +247,308 @@ public class GitOBRRepo extends LocalIndexedRepo {
         }
     }
 
+    /**
+     * Store the artifact in the layout of {@link LocalIndexedRepo}, but leave updating the index to
+     * {@link #finishPut(Git)}; the implementation of the superclass regenerates every index of the repository when the
+     * put is not coordinated. A bundle that is replaced is kept until the put is committed, so that it can be restored if
+     * the coordination fails.
+     */
+    @Override
+    protected synchronized File putArtifact(File tmpFile) throws Exception {
+        String bsn;
+        Version version;
+        Jar jar = new Jar(tmpFile);
+        try {
+            bsn = jar.getBsn();
+            if (bsn == null || !Verifier.isBsn(bsn))
+                throw new IllegalArgumentException("Jar does not have a Bundle-SymbolicName manifest header");
+
+            String versionString = jar.getVersion();
+            if (versionString != null && !Verifier.isVersion(versionString))
+                throw new IllegalArgumentException("Invalid version " + versionString + " in file " + tmpFile);
+            version = versionString != null ? Version.parseVersion(versionString) : Version.emptyVersion;
+        } finally {
+            // An open jar on file will fail rename on windows
+            jar.close();
+        }
+
+        File file = new FileRepo(getRoot()).put(bsn, version);
+        boolean pending = pendingFiles.containsKey(file);
+        File backup = pending ? pendingFiles.get(file) : null;
+        if (file.exists()) {
+            if (!overwrite)
+                return null;
+            if (!pending) {
+                backup = IO.createTempFile(file.getParentFile(), file.getName(), ".bak");
+                IO.rename(file, backup);
+            }
+        }
+
+        IO.rename(tmpFile, file);
+        pendingFiles.put(file, backup);
+        return file;
+    }
+
+    /**
+     * Update the index once for all the bundles put during the coordination, then commit and push them together.
+     */
+    @Override
+    public synchronized void ended(Coordination coordination) throws Exception {
+        pulledInCoordination = false;
+        if (pendingFiles.isEmpty())
+            return;
+
+        try {
+            repository.incrementOpen();
+            finishPut(Git.wrap(repository));
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Override
+    public synchronized void failed(Coordination coordination) throws Exception {
+        pulledInCoordination = false;
+        rollBack();
+    }
+
+    /**
+     * Restore the bundles replaced by the pending files and delete the new ones.
+     */
+    private void rollBack() {
+        for (Entry<File,File> entry : pendingFiles.entrySet()) {
+            File file = entry.getKey();
+            File backup = entry.getValue();
+            try {
+                if (backup != null)
+                    IO.rename(backup, file);
+                else
+                    IO.delete(file);
+            } catch (IOException e) {
+                reporter.warning("Failed to roll back repository entry %s: %s", file, e);
+            }
+        }
+        pendingFiles.clear();
+        putHead = null;
+    }
+
+    /**
+     * Reset the repository and fetch the remote repository in the background, rather than blocking the caller.
+     */
+    @Override
+    public boolean refresh() {
+        synchronized (this) {
+            // A single update, which leaves the periodic updates scheduled
+            if (fetchInterval >= 0)
+                updater.execute(new Updater(this));
+        }
+        return super.refresh();
+    }
+
+    /**
+     * Stop updating the repository in the background. Called when the workspace is closed.
+     */
+    public synchronized void close() {
+        if (updates != null) {
+            updates.cancel(false);
+            updates = null;
+        }
+    }
+
+    /**
+     * Update the repository in the background: once, immediately, if the interval is zero, and then every interval
+     * seconds if it is positive. A negative interval disables background updates.
+     */
+    private synchronized void scheduleUpdates(long interval) {
+        close();
+        if (interval < 0)
+            return;
+
+        Updater task = new Updater(this);
+        if (interval > 0)
+            updates = updater.scheduleWithFixedDelay(task, 0, interval, TimeUnit.SECONDS);
+        else
+            updates = updater.schedule(task, 0, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Fetch the remote repository and merge the remote branch into the local clone. The fetch does not hold the lock of
+     * the repository, so the repository can be read in the meantime. The merge is skipped while puts of a coordination
+     * are pending, they are merged by the pull of the next put. Returns true if the local clone has changed, in which
+     * case the indexes are read again when the repository is next accessed.
+     */
+    public boolean update() throws Exception {
+        Repository repo;
+        synchronized (this) {
+            repo = repository;
+        }
+        Git git = Git.wrap(repo);
+        try {
+            repo.incrementOpen();
+            synchronized (fetchLock) {
+                git.fetch().setCredentialsProvider(CredentialsProvider.getDefault()).call();
+            }
+
+            synchronized (this) {
+                if (!pendingFiles.isEmpty())
+                    return false;
+
+                Ref remoteBranch = repo.getRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + gitBranch);
+                ObjectId head = repo.resolve(Constants.HEAD);
+                if (remoteBranch == null || remoteBranch.getObjectId().equals(head))
+                    return false;
+
+                MergeResult result = git.merge().include(remoteBranch).call();
+                if (result.getMergeStatus() == MergeStatus.CONFLICTING || result.getMergeStatus() == MergeStatus.FAILED) {
+                    // Leave the clone as it was; the next put reports the conflict when it pulls
+                    if (head != null)
+                        git.reset().setMode(ResetType.HARD).setRef(head.name()).call();
+                    throw new RuntimeException(String.format("Failed to merge changes from %s", gitUri));
+                }
+                if (head != null && head.equals(repo.resolve(Constants.HEAD)))
+                    return false;
+
+                reset();
+                return true;
+            }
+        } finally {
+            repo.close();
+        }
+    }
+
+    private void fireRepositoryRefreshed() {
+        if (registry == null)
+            return;
+        for (RepositoryListenerPlugin listener : registry.getPlugins(RepositoryListenerPlugin.class)) {
+            try {
+                listener.repositoryRefreshed(this);
+            } catch (Exception e) {
+                if (reporter != null)
+                    reporter.warning("Repository listener threw an unexpected exception: %s", e);
+            }
+        }
+    }
+
+    private void pull(Git git) throws Exception {
+        ObjectId head = repository.resolve(Constants.HEAD);
+        PullResult pullResult = git.pull().call();
+
+        // Check result
+        MergeResult mergeResult = pullResult.getMergeResult();
+        if (mergeResult.getMergeStatus() == MergeStatus.CONFLICTING || mergeResult.getMergeStatus() == MergeStatus.FAILED) {
+            // Leave the clone as it was, rather than with a half merged index that every later put would trip over
+            if (head != null)
+                git.reset().setMode(ResetType.HARD).setRef(head.name()).call();
+
+            Map<String, ? > paths = mergeResult.getMergeStatus() == MergeStatus.CONFLICTING ? mergeResult.getConflicts() : mergeResult.getFailingPaths();
+            String message = String.format("Failed to merge changes from %s: %s %s", gitUri, mergeResult.getMergeStatus(), paths != null ? paths.keySet() : "");
+            if (reporter != null)
+                reporter.error("%s", message);
+            throw new RuntimeException(message);
+        }
+    }
+
+    private void finishPut(Git git) throws Exception {
+        List<File> files = new ArrayList<File>(pendingFiles.keySet());
+        try {
+            updateIndexes(files);
+
+            // Re-read the index. The local indexes are read from disk, the remote index is only downloaded when it has
+            // changed.
+            reset();
+            init();
+
+            commitAndPush(git, files);
+        } catch (Exception e) {
+            // Leave the clone as it was before the puts, rather than with bundles that the next put would push as its own
+            if (putHead != null) {
+                try {
+                    git.reset().setMode(ResetType.HARD).setRef(putHead.name()).call();
+                } catch (Exception resetException) {
+                    if (reporter != null)
+                        reporter.warning("Failed to reset %s to %s: %s", gitRootDir, putHead.name(), resetException);
+                }
+            }
+            rollBack();
+            reset();
+            if (reporter != null)
+                reporter.error("Failed to commit and push %s to %s: %s", files, gitPushUri, e);
+            throw e;
+        }
+
+        for (File file : files) {
+            File backup = pendingFiles.remove(file);
+            if (backup != null)
+                IO.delete(backup);
+        }
+        putHead = null;
+
+        for (File file : files)
+            fireBundleAdded(file);
+    }
+
+    /**
+     * Merge the entries for the given files into the generated indexes, rather than analysing every file in the
+     * repository again. An index that cannot be updated is deleted, and is then generated in full when the indexes
+     * are next loaded.
+     */
+    private void updateIndexes(List<File> files) throws Exception {
+        Set<File> canonicalFiles = new HashSet<File>();
+        for (File file : files)
+            canonicalFiles.add(file.getCanonicalFile());
+        URI rootUri = getRoot().getCanonicalFile().toURI();
+
+        for (IRepositoryContentProvider provider : generatingProviders) {
+            if (!provider.supportsGeneration())
+                continue;
+
+            File indexFile = new File(getRoot(), provider.getDefaultIndexName(pretty));
+            boolean updated = false;
+            if (indexFile.isFile()) {
+                File additions = IO.createTempFile(getRoot(), "additions", indexFile.getName());
+                OutputStream out = null;
+                try {
+                    out = new FileOutputStream(additions);
+                    provider.generateIndex(canonicalFiles, out, getName(), rootUri, pretty, registry, logService);
+                    out.close();
+                    out = null;
+                    updated = IndexUpdater.merge(indexFile, additions, pretty);
+                } catch (Exception e) {
+                    logService.log(LogService.LOG_WARNING, String.format("Unable to update index file '%s' for repository type %s, regenerating it", indexFile, provider.getName()), e);
+                } finally {
+                    IO.close(out);
+                    IO.delete(additions);
+                }
+            }
+            if (!updated)
+                IndexUpdater.delete(indexFile);
+        }
+    }
+
+    private void commitAndPush(Git git, List<File> files) throws Exception {
+        List<String> paths = new ArrayList<String>(files.size());
+        AddCommand add = git.add();
+        for (File file : files) {
+            String path = getRelativePath(gitRootDir, file);
+            add.addFilepattern(path);
+            paths.add(path);
+        }
+        for (IRepositoryContentProvider provider : generatingProviders) {
+            if (!provider.supportsGeneration())
+                continue;
+            add.addFilepattern(getRelativePath(gitRootDir, new File(getRoot(), provider.getDefaultIndexName(pretty))));
+        }
+        add.call();
+
+        String message;
+        if (paths.size() == 1)
+            message = "bndtools added bundle : " + paths.get(0);
+        else
+            message = "bndtools added bundles : " + paths;
+        git.commit().setMessage(message).call();
+        git.push().setCredentialsProvider(CredentialsProvider.getDefault()).call();
+    }
+
     @Override
     public synchronized String getLocation() {
         return gitUri;
@@ -194,11 +568,61 @@ public class GitOBRRepo extends LocalIndexedRepo {
         List<URI> indexes = super.loadIndexes();
         if (gitRepoXmlUri != null) {
             URI gitRepo = new URI(gitRepoXmlUri);
-            indexes.add(gitRepo);
+            indexes.add(getCachedIndex(gitRepo));
         }
         return indexes;
     }
 
+    /**
+     * Returns a local copy of a remote index, which is only downloaded again when its ETag has changed. Falls back to
+     * the remote URI when no copy can be made, and to a stale copy when the remote index cannot be reached.
+     */
+    private URI getCachedIndex(URI uri) {
+        if ("file".equals(uri.getScheme()))
+            return uri;
+
+        File cacheDir = new File(repository.getDirectory(), REMOTE_INDEX_CACHE_DIR);
+        File cached = new File(cacheDir, escape(uri.toString()));
+        File tagFile = new File(cacheDir, escape(uri.toString()) + ".etag");
+        try {
+            String tag = cached.isFile() && tagFile.isFile() ? IO.collect(tagFile) : null;
+            TaggedData data = getConnector().connectTagged(uri.toURL(), tag);
+            if (data == null)
+                return cached.toURI();
+
+            if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+                throw new IOException("Could not create directory " + cacheDir);
+            File tmp = IO.createTempFile(cacheDir, "index", ".tmp");
+            try {
+                IO.copy(data.getInputStream(), tmp);
+                IO.rename(tmp, cached);
+            } finally {
+                IO.delete(tmp);
+            }
+            if (data.getTag() != null)
+                IO.store(data.getTag(), tagFile);
+            else
+                IO.delete(tagFile);
+            return cached.toURI();
+        } catch (Exception e) {
+            if (cached.isFile()) {
+                logService.log(LogService.LOG_WARNING, String.format("Unable to refresh index %s, using the copy from %s", uri, cached), e);
+                return cached.toURI();
+            }
+            return uri;
+        }
+    }
+
+    private URLConnector getConnector() {
+        URLConnector connector = (registry != null) ? registry.getPlugin(URLConnector.class) : null;
+        if (connector == null) {
+            DefaultURLConnector defaultConnector = new DefaultURLConnector();
+            defaultConnector.setRegistry(registry);
+            connector = defaultConnector;
+        }
+        return connector;
+    }
+
     protected void configFileInit() {
         if (configFileList == null) {
             return;
@@ -261,6 +685,32 @@ public class GitOBRRepo extends LocalIndexedRepo {
         mappings.add(mapping);
     }
 
+    /**
+     * Updates a repository in the background. Only weakly references the repository, so that a repository that is
+     * discarded without being closed does not keep being updated.
+     */
+    private static class Updater implements Runnable {
+        private final WeakReference<GitOBRRepo> ref;
+
+        Updater(GitOBRRepo repo) {
+            this.ref = new WeakReference<GitOBRRepo>(repo);
+        }
+
+        public void run() {
+            GitOBRRepo repo = ref.get();
+            if (repo == null)
+                // Suppresses subsequent executions of a periodic update
+                throw new IllegalStateException("Repository has been discarded");
+
+            try {
+                if (repo.update())
+                    repo.fireRepositoryRefreshed();
+            } catch (Exception e) {
+                repo.logService.log(LogService.LOG_WARNING, String.format("Unable to update repository %s from %s", repo.getName(), repo.gitUri), e);
+            }
+        }
+    }
+
     static class Mapping {
         Glob urlPattern;
         String user;
@@ -2,11 +2,13 @@ package bndtools.bndplugins.repo.git;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.eclipse.jgit.api.CheckoutCommand;
+import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.InvalidRefNameException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
@@ -28,6 +30,20 @@ public class GitUtils {
 
     public static synchronized FileRepository getRepository(File gitRoot, String branch, String gitUrl, String gitPushUrl) throws IOException, ConfigInvalidException, JGitInternalException, RefAlreadyExistsException, RefNotFoundException,
             InvalidRefNameException {
+        return getRepository(gitRoot, branch, gitUrl, gitPushUrl, false, true);
+    }
+
+    /**
+     * Returns the local repository, cloning it first if it does not exist yet.
+     * 
+     * @param singleBranch
+     *            when cloning, only fetch the given branch rather than all branches of the remote repository.
+     * @param update
+     *            pull (or fetch) an existing clone from the remote repository. When false, no network access is made
+     *            unless the repository has to be cloned, and the caller is responsible for updating the repository.
+     */
+    public static synchronized FileRepository getRepository(File gitRoot, String branch, String gitUrl, String gitPushUrl, boolean singleBranch, boolean update) throws IOException, ConfigInvalidException, JGitInternalException,
+            RefAlreadyExistsException, RefNotFoundException, InvalidRefNameException {
 
         File dotGit;
         if (gitRoot.getName().equals(Constants.DOT_GIT)) {
@@ -42,7 +58,14 @@ public class GitUtils {
         }
 
         if (!dotGit.exists()) {
-            Git.cloneRepository().setDirectory(gitRoot).setCloneAllBranches(true).setURI(gitUrl).call();
+            CloneCommand clone = Git.cloneRepository().setDirectory(gitRoot).setURI(gitUrl);
+            if (singleBranch && branch != null) {
+                String branchRef = Constants.R_HEADS + branch;
+                clone.setCloneAllBranches(false).setBranchesToClone(Collections.singleton(branchRef)).setBranch(branchRef);
+            } else {
+                clone.setCloneAllBranches(true);
+            }
+            clone.call();
             FileBasedConfig config = new FileBasedConfig(new File(dotGit, "config"), FS.DETECTED);
             config.load();
             if (gitPushUrl != null) {
@@ -70,10 +93,12 @@ public class GitUtils {
                 checkout.setName(branch);
                 checkout.call();
             }
-            if (pull) {
-                git.pull().call();
-            } else {
-                git.fetch().call();
+            if (update) {
+                if (pull) {
+                    git.pull().call();
+                } else {
+                    git.fetch().call();
+                }
             }
         } catch (Exception e) {
             if (!(e.getCause() instanceof TransportException)) {
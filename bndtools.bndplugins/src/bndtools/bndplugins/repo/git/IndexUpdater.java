@@ -0,0 +1,221 @@
+package bndtools.bndplugins.repo.git;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import aQute.bnd.deployer.repository.AbstractIndexedRepo;
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * Updates a generated repository index in place by merging in an index generated for only the new files, so that the
+ * existing files do not have to be analysed again. A resource of the existing index that has the same location as a
+ * new resource is replaced by it. Both the OBR and the R5 index formats are understood, compressed or not; the index
+ * is written back in the form it was read.
+ */
+class IndexUpdater {
+
+    private static final String INDENT_AMOUNT = "{http://xml.apache.org/xslt}indent-amount";
+    private static final String ELEMENT_REPOSITORY = "repository";
+    private static final String ELEMENT_RESOURCE = "resource";
+    private static final String ELEMENT_CAPABILITY = "capability";
+    private static final String ELEMENT_ATTRIBUTE = "attribute";
+    private static final String OBR_ATTR_URI = "uri";
+    private static final String R5_CONTENT_NAMESPACE = "osgi.content";
+    private static final String R5_CONTENT_URL = "url";
+    private static final String[] STAMP_ATTRIBUTES = {
+            "increment", "lastmodified"
+    };
+
+    private IndexUpdater() {}
+
+    /**
+     * Merge the resources of {@code additions} into {@code index} and rewrite its SHA file. Returns false, leaving the
+     * index untouched, if either index is not in a format that is understood.
+     */
+    static boolean merge(File index, File additions, boolean pretty) throws Exception {
+        boolean compressed = isCompressed(index);
+        Document document = parse(index);
+        Document additionsDocument = parse(additions);
+
+        Element root = document.getDocumentElement();
+        Element additionsRoot = additionsDocument.getDocumentElement();
+        if (!ELEMENT_REPOSITORY.equals(getName(root)) || !ELEMENT_REPOSITORY.equals(getName(additionsRoot)))
+            return false;
+
+        Map<String,Element> existing = new HashMap<String,Element>();
+        for (Element resource : getChildren(root, ELEMENT_RESOURCE)) {
+            String location = getLocation(resource);
+            if (location == null)
+                return false;
+            existing.put(location, resource);
+        }
+
+        List<Element> added = getChildren(additionsRoot, ELEMENT_RESOURCE);
+        for (Element resource : added) {
+            if (getLocation(resource) == null)
+                return false;
+        }
+        for (Element resource : added) {
+            Node imported = document.importNode(resource, true);
+            Element replaced = existing.get(getLocation(resource));
+            if (replaced != null)
+                root.replaceChild(imported, replaced);
+            else
+                root.appendChild(imported);
+        }
+
+        for (String attribute : STAMP_ATTRIBUTES) {
+            if (additionsRoot.hasAttribute(attribute))
+                root.setAttribute(attribute, additionsRoot.getAttribute(attribute));
+        }
+
+        write(document, index, pretty, compressed);
+        writeSha(index);
+        return true;
+    }
+
+    /**
+     * Returns the location of a resource: the {@code uri} attribute of an OBR resource, or the {@code url} attribute of
+     * the {@code osgi.content} capability of an R5 resource.
+     */
+    private static String getLocation(Element resource) {
+        if (resource.hasAttribute(OBR_ATTR_URI))
+            return resource.getAttribute(OBR_ATTR_URI);
+
+        for (Element capability : getChildren(resource, ELEMENT_CAPABILITY)) {
+            if (!R5_CONTENT_NAMESPACE.equals(capability.getAttribute("namespace")))
+                continue;
+            for (Element attribute : getChildren(capability, ELEMENT_ATTRIBUTE)) {
+                if (R5_CONTENT_URL.equals(attribute.getAttribute("name")))
+                    return attribute.getAttribute("value");
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> getChildren(Element parent, String name) {
+        List<Element> children = new ArrayList<Element>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(getName(node)))
+                children.add((Element) node);
+        }
+        return children;
+    }
+
+    private static String getName(Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+
+    private static boolean isCompressed(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xff) && in.read() == (GZIPInputStream.GZIP_MAGIC >> 8);
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    private static Document parse(File file) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+
+        InputStream in = new FileInputStream(file);
+        try {
+            if (isCompressed(file))
+                in = new GZIPInputStream(in);
+            return builder.parse(in);
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    private static void write(Document document, File file, boolean pretty, boolean compressed) throws Exception {
+        // Keep an indented index indented, e.g. OBR indexes are always indented
+        boolean indent = pretty || isIndented(document.getDocumentElement());
+        if (indent)
+            removeWhitespace(document.getDocumentElement());
+        document.setXmlStandalone(true);
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.setOutputProperty(OutputKeys.INDENT, indent ? "yes" : "no");
+        transformer.setOutputProperty(INDENT_AMOUNT, "2");
+
+        // Write next to the index and replace it, so a failure does not leave a truncated index
+        File tmp = IO.createTempFile(file.getParentFile(), "index", ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            if (compressed)
+                out = new GZIPOutputStream(out);
+            transformer.transform(new DOMSource(document), new StreamResult(out));
+        } finally {
+            IO.close(out);
+        }
+        IO.rename(tmp, file);
+    }
+
+    private static boolean isIndented(Element element) {
+        Node first = element.getFirstChild();
+        return first != null && first.getNodeType() == Node.TEXT_NODE && first.getNodeValue().indexOf('\n') >= 0;
+    }
+
+    /**
+     * Remove the whitespace between elements, which would otherwise be doubled when the document is indented.
+     */
+    private static void removeWhitespace(Element element) {
+        Node node = element.getFirstChild();
+        while (node != null) {
+            Node next = node.getNextSibling();
+            if (node.getNodeType() == Node.TEXT_NODE && node.getNodeValue().trim().length() == 0)
+                element.removeChild(node);
+            else if (node.getNodeType() == Node.ELEMENT_NODE)
+                removeWhitespace((Element) node);
+            node = next;
+        }
+    }
+
+    private static void writeSha(File index) throws Exception {
+        MessageDigest md = MessageDigest.getInstance(SHA256.ALGORITHM);
+        IO.copy(index, md);
+
+        File shaFile = new File(index.getPath() + AbstractIndexedRepo.REPO_INDEX_SHA_EXTENSION);
+        OutputStream out = new FileOutputStream(shaFile);
+        try {
+            out.write(Hex.toHexString(md.digest()).toLowerCase().getBytes());
+        } finally {
+            IO.close(out);
+        }
+    }
+
+    static void delete(File index) throws IOException {
+        IO.delete(index);
+        IO.delete(new File(index.getPath() + AbstractIndexedRepo.REPO_INDEX_SHA_EXTENSION));
+    }
+
+}
@@ -4,11 +4,30 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import junit.framework.TestCase;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.osgi.framework.Bundle;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.CoordinationException;
+import org.osgi.service.coordinator.Coordinator;
+import org.osgi.service.coordinator.Participant;
+
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.version.Version;
@@ -17,17 +36,28 @@ import bndtools.bndplugins.repo.git.GitOBRRepo;
 
 public class TestGitOBRRepo extends TestCase {
 
+    private File remoteDir = new File("generated/test-gitremote-tmp.git");
     private File checkoutDir = new File("generated/test-gitcheckout-tmp");
+    private File otherCheckoutDir = new File("generated/test-gitcheckout-other-tmp");
 
     @Override
     protected void setUp() throws Exception {
         IO.delete(checkoutDir);
         checkoutDir.mkdirs();
+        IO.delete(otherCheckoutDir);
+        otherCheckoutDir.mkdirs();
+
+        // Tests push to the remote repository, so they work on a copy of the fixture
+        IO.delete(remoteDir);
+        Git remote = Git.cloneRepository().setURI(new File("testdata/testrepo.git").getAbsoluteFile().toURI().toString()).setDirectory(remoteDir).setBare(true).call();
+        remote.getRepository().close();
     }
 
     @Override
     protected void tearDown() throws Exception {
         IO.delete(checkoutDir);
+        IO.delete(otherCheckoutDir);
+        IO.delete(remoteDir);
     }
 
     public void testGitRepoGet() throws Exception {
@@ -45,16 +75,127 @@ public class TestGitOBRRepo extends TestCase {
         assertEquals(new File(checkoutDir, "jars/javax.servlet/javax.servlet-2.5.0.jar").getAbsoluteFile(), bundleFile);
     }
 
+    public void testGitRepoCoordinatedPut() throws Exception {
+        SimpleCoordinator coordinator = new SimpleCoordinator();
+        GitOBRRepo repo = getOBRRepo(coordinator);
+        int commits = countRemoteCommits();
+        Coordination coordination = coordinator.begin("test", 0);
+        repo.put(new BufferedInputStream(new FileInputStream("testdata/eclipse2/ploogins/javax.servlet_2.5.0.v200806031605.jar")), new RepositoryPlugin.PutOptions());
+        repo.put(new BufferedInputStream(new FileInputStream("testdata/eclipse1/plugins/org.eclipse.core.expressions_3.4.101.R35x_v20100209.jar")), new RepositoryPlugin.PutOptions());
+        assertEquals(Collections.singletonList(repo), coordination.getParticipants());
+        assertEquals("Pushed before the coordination ended", commits, countRemoteCommits());
+
+        coordination.end();
+        assertNull(coordinator.peek());
+        assertEquals("Expected a single commit", commits + 1, countRemoteCommits());
+        assertEquals(new File(checkoutDir, "jars/javax.servlet/javax.servlet-2.5.0.jar").getAbsoluteFile(), repo.get("javax.servlet", new Version("2.5"), null));
+        assertEquals(new File(checkoutDir, "jars/org.eclipse.core.expressions/org.eclipse.core.expressions-3.4.101.jar").getAbsoluteFile(), repo.get("org.eclipse.core.expressions", new Version("3.4.101"), null));
+        assertEquals("Existing index entries were lost", new File(checkoutDir, "jars/osgi.core/osgi.core-4.2.0.jar").getAbsoluteFile(), repo.get("osgi.core", new Version("4.2.0"), null));
+    }
+
+    public void testGitRepoFailedCoordination() throws Exception {
+        SimpleCoordinator coordinator = new SimpleCoordinator();
+        GitOBRRepo repo = getOBRRepo(coordinator);
+        int commits = countRemoteCommits();
+        File existing = new File(checkoutDir, "jars/osgi.core/osgi.core-4.2.0.jar");
+        long existingLength = existing.length();
+
+        Coordination coordination = coordinator.begin("test", 0);
+        repo.put(new BufferedInputStream(new FileInputStream("testdata/eclipse2/ploogins/javax.servlet_2.5.0.v200806031605.jar")), new RepositoryPlugin.PutOptions());
+        File copy = new File(checkoutDir, "osgi.core.jar");
+        IO.copy(existing, copy);
+        repo.put(new BufferedInputStream(new FileInputStream(copy)), new RepositoryPlugin.PutOptions());
+        coordination.fail(new Exception("test"));
+
+        assertEquals("Pushed a failed coordination", commits, countRemoteCommits());
+        assertFalse("New bundle was not removed", new File(checkoutDir, "jars/javax.servlet/javax.servlet-2.5.0.jar").exists());
+        assertTrue("Replaced bundle was not restored", existing.isFile());
+        assertEquals(existingLength, existing.length());
+        assertEquals(Collections.singletonList(existing.getName()), Arrays.asList(existing.getParentFile().list()));
+    }
+
+    public void testGitRepoFailedPush() throws Exception {
+        SimpleCoordinator coordinator = new SimpleCoordinator();
+        GitOBRRepo repo = getOBRRepo(coordinator);
+        File existing = new File(checkoutDir, "jars/osgi.core/osgi.core-4.2.0.jar");
+        long existingLength = existing.length();
+
+        Coordination coordination = coordinator.begin("test", 0);
+        repo.put(new BufferedInputStream(new FileInputStream("testdata/eclipse2/ploogins/javax.servlet_2.5.0.v200806031605.jar")), new RepositoryPlugin.PutOptions());
+        File copy = new File(checkoutDir, "osgi.core.jar");
+        IO.copy(existing, copy);
+        repo.put(new BufferedInputStream(new FileInputStream(copy)), new RepositoryPlugin.PutOptions());
+        copy.delete();
+
+        Git git = Git.open(checkoutDir);
+        try {
+            String head = git.getRepository().resolve("HEAD").name();
+
+            // The push fails once the remote repository is gone
+            IO.delete(remoteDir);
+            try {
+                coordination.end();
+                fail("Expected the push to fail");
+            } catch (CoordinationException e) {
+                assertEquals(CoordinationException.PARTIALLY_ENDED, e.getType());
+            }
+
+            assertEquals("Commit was not rolled back", head, git.getRepository().resolve("HEAD").name());
+            Status status = git.status().call();
+            assertEquals("Clone was left modified", Collections.emptySet(), status.getModified());
+            assertEquals("Clone was left modified", Collections.emptySet(), status.getAdded());
+        } finally {
+            git.getRepository().close();
+        }
+        assertFalse("New bundle was not removed", new File(checkoutDir, "jars/javax.servlet/javax.servlet-2.5.0.jar").exists());
+        assertEquals(existingLength, existing.length());
+        assertEquals(Collections.singletonList(existing.getName()), Arrays.asList(existing.getParentFile().list()));
+    }
+
+    public void testGitRepoUpdate() throws Exception {
+        GitOBRRepo repo = getOBRRepo(checkoutDir, null, "-1");
+        assertFalse("Nothing to update", repo.update());
+
+        GitOBRRepo other = getOBRRepo(otherCheckoutDir, null, "-1");
+        other.put(new BufferedInputStream(new FileInputStream("testdata/eclipse1/plugins/javax.servlet.jsp_2.0.0.v200806031607.jar")), new RepositoryPlugin.PutOptions());
+        assertNull(repo.get("javax.servlet.jsp", new Version("2.0"), null));
+
+        assertTrue("Expected remote changes", repo.update());
+        assertEquals(new File(checkoutDir, "jars/javax.servlet.jsp/javax.servlet.jsp-2.0.0.jar").getAbsoluteFile(), repo.get("javax.servlet.jsp", new Version("2.0"), null));
+    }
+
+    private int countRemoteCommits() throws Exception {
+        Repository remote = new FileRepositoryBuilder().setGitDir(remoteDir).build();
+        try {
+            int count = 0;
+            for (Iterator<RevCommit> iter = new Git(remote).log().call().iterator(); iter.hasNext(); iter.next())
+                count++;
+            return count;
+        } finally {
+            remote.close();
+        }
+    }
+
     private GitOBRRepo getOBRRepo() throws IOException {
-        String repoUri = new File("testdata/testrepo.git").getAbsoluteFile().toURI().toString();
+        return getOBRRepo(null);
+    }
+
+    private GitOBRRepo getOBRRepo(Coordinator coordinator) throws IOException {
+        return getOBRRepo(checkoutDir, coordinator, null);
+    }
+
+    private GitOBRRepo getOBRRepo(File dir, Coordinator coordinator, String fetchInterval) throws IOException {
+        String repoUri = remoteDir.getAbsoluteFile().toURI().toString();
 
         Map<String,String> properties = new HashMap<String,String>();
         properties.put(GitOBRRepo.PROP_GIT_URI, repoUri);
         properties.put(GitOBRRepo.PROP_GIT_PUSH_URI, repoUri);
         properties.put(GitOBRRepo.PROP_GIT_BRANCH, "master");
-        properties.put(GitOBRRepo.PROP_LOCAL_DIR, checkoutDir.getAbsolutePath());
+        properties.put(GitOBRRepo.PROP_LOCAL_DIR, dir.getAbsolutePath());
         properties.put(GitOBRRepo.PROP_LOCAL_SUB_DIR, "jars");
         properties.put(GitOBRRepo.PROP_REPO_TYPE, GitOBRRepo.REPO_TYPE_OBR);
+        if (fetchInterval != null)
+            properties.put(GitOBRRepo.PROP_GIT_FETCH_INTERVAL, fetchInterval);
 
         GitOBRRepo repo = new GitOBRRepo();
         repo.setProperties(properties);
@@ -63,8 +204,163 @@ public class TestGitOBRRepo extends TestCase {
         props.put(Processor.PLUGIN, org.osgi.impl.bundle.bindex.BundleIndexerImpl.class.getName());
         Processor processor = new Processor();
         processor.setProperties(props);
+        if (coordinator != null)
+            processor.addBasicPlugin(coordinator);
         repo.setReporter(processor);
         repo.setRegistry(processor);
         return repo;
     }
+
+    /**
+     * A coordinator for a single thread, which notifies the participants of a coordination when it ends or fails.
+     * Timeouts are not enforced.
+     */
+    private static class SimpleCoordinator implements Coordinator {
+        private final LinkedList<Coordination> stack = new LinkedList<Coordination>();
+        private long ids = 0;
+
+        public Coordination create(String name, long timeMillis) {
+            return new SimpleCoordination(++ids, name);
+        }
+
+        public Coordination begin(String name, long timeMillis) {
+            return create(name, timeMillis).push();
+        }
+
+        public Coordination peek() {
+            return stack.isEmpty() ? null : stack.getFirst();
+        }
+
+        public Coordination pop() {
+            return stack.isEmpty() ? null : stack.removeFirst();
+        }
+
+        public boolean fail(Throwable cause) {
+            Coordination coordination = peek();
+            return coordination != null && coordination.fail(cause);
+        }
+
+        public boolean addParticipant(Participant participant) {
+            Coordination coordination = peek();
+            if (coordination == null)
+                return false;
+            coordination.addParticipant(participant);
+            return true;
+        }
+
+        public Collection<Coordination> getCoordinations() {
+            return new ArrayList<Coordination>(stack);
+        }
+
+        public Coordination getCoordination(long id) {
+            for (Coordination coordination : stack) {
+                if (coordination.getId() == id)
+                    return coordination;
+            }
+            return null;
+        }
+
+        private class SimpleCoordination implements Coordination {
+            private final long id;
+            private final String name;
+            private final List<Participant> participants = new ArrayList<Participant>();
+            private final Map<Class< ? >,Object> variables = new HashMap<Class< ? >,Object>();
+            private Throwable failure = null;
+            private boolean terminated = false;
+
+            SimpleCoordination(long id, String name) {
+                this.id = id;
+                this.name = name;
+            }
+
+            public long getId() {
+                return id;
+            }
+
+            public String getName() {
+                return name;
+            }
+
+            public void end() {
+                stack.remove(this);
+                if (terminated)
+                    throw new CoordinationException("Coordination has already terminated", this, failure != null ? CoordinationException.FAILED : CoordinationException.ALREADY_ENDED, failure);
+                terminated = true;
+
+                Exception partialFailure = null;
+                for (Participant participant : participants) {
+                    try {
+                        participant.ended(this);
+                    } catch (Exception e) {
+                        if (partialFailure == null)
+                            partialFailure = e;
+                    }
+                }
+                if (partialFailure != null)
+                    throw new CoordinationException("One or more participants failed to end", this, CoordinationException.PARTIALLY_ENDED, partialFailure);
+            }
+
+            public boolean fail(Throwable cause) {
+                if (terminated)
+                    return false;
+                terminated = true;
+                failure = cause;
+                for (Participant participant : participants) {
+                    try {
+                        participant.failed(this);
+                    } catch (Exception e) {
+                        // the coordination has failed regardless
+                    }
+                }
+                return true;
+            }
+
+            public Throwable getFailure() {
+                return failure;
+            }
+
+            public boolean isTerminated() {
+                return terminated;
+            }
+
+            public void addParticipant(Participant participant) {
+                if (terminated)
+                    throw new CoordinationException("Coordination has already terminated", this, failure != null ? CoordinationException.FAILED : CoordinationException.ALREADY_ENDED, failure);
+                if (!participants.contains(participant))
+                    participants.add(participant);
+            }
+
+            public List<Participant> getParticipants() {
+                return Collections.unmodifiableList(participants);
+            }
+
+            public Map<Class< ? >,Object> getVariables() {
+                return variables;
+            }
+
+            public long extendTimeout(long timeMillis) {
+                return 0;
+            }
+
+            public void join(long timeMillis) {}
+
+            public Coordination push() {
+                stack.addFirst(this);
+                return this;
+            }
+
+            public Thread getThread() {
+                return stack.contains(this) ? Thread.currentThread() : null;
+            }
+
+            public Bundle getBundle() {
+                return null;
+            }
+
+            public Coordination getEnclosingCoordination() {
+                int index = stack.indexOf(this);
+                return index >= 0 && index + 1 < stack.size() ? stack.get(index + 1) : null;
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.bndtools.builder.indexer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -7,6 +9,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -33,9 +36,14 @@ import org.osgi.service.indexer.impl.RepoIndex;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
+import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
+import aQute.bnd.deployer.repository.api.Referral;
+import aQute.bnd.deployer.repository.providers.R5RepoContentProvider;
 import aQute.lib.io.IO;
 import bndtools.central.Central;
+import bndtools.central.CompactIndexCodec;
 import bndtools.central.WorkspaceR5Repository;
+import bndtools.preferences.BndPreferences;
 
 public class BuiltBundleIndexer extends AbstractBuildListener {
 
@@ -68,8 +76,11 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
 
         // Generate the index file
         File indexFile;
+        List<org.osgi.resource.Resource> resources = null;
         OutputStream output = null;
         try {
+            boolean compact = new BndPreferences().getCompactWorkspaceIndex();
+
             Project model = Central.getProject(project.getLocation().toFile());
             File target = model.getTarget();
             indexFile = new File(target, INDEX_FILENAME);
@@ -96,8 +107,19 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
             config.put(ResourceIndexer.ROOT_URL, project.getLocation().toFile().toURI().toString());
             config.put(ResourceIndexer.PRETTY, "true");
 
-            output = new FileOutputStream(indexFile);
-            indexer.index(files, output, config);
+            URI baseUri = project.getLocation().toFile().toURI();
+            if (compact) {
+                // Index in memory, then write the parsed resources in compact form so they needn't be parsed again
+                ByteArrayOutputStream xml = new ByteArrayOutputStream();
+                indexer.index(files, xml, config);
+                resources = parseIndex(new ByteArrayInputStream(xml.toByteArray()), baseUri);
+
+                output = new FileOutputStream(indexFile);
+                CompactIndexCodec.write(resources, baseUri, output);
+            } else {
+                output = new FileOutputStream(indexFile);
+                indexer.index(files, output, config);
+            }
             IO.close(output);
             indexPath.refreshLocal(IResource.DEPTH_ZERO, null);
             if (indexPath.exists())
@@ -112,9 +134,13 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
         // Parse the index and add to the workspace repository
         FileInputStream input = null;
         try {
-            input = new FileInputStream(indexFile);
             WorkspaceR5Repository workspaceRepo = Central.getWorkspaceR5Repository();
-            workspaceRepo.loadProjectIndex(project, input, project.getLocation().toFile().toURI());
+            if (resources != null) {
+                workspaceRepo.loadProjectResources(project, resources);
+            } else {
+                input = new FileInputStream(indexFile);
+                workspaceRepo.loadProjectIndex(project, input, project.getLocation().toFile().toURI());
+            }
         } catch (Exception e) {
             logger.logError("Failed to update workspace index.", e);
         } finally {
@@ -128,4 +154,18 @@ public class BuiltBundleIndexer extends AbstractBuildListener {
         }
     }
 
+    private List<org.osgi.resource.Resource> parseIndex(ByteArrayInputStream xml, URI baseUri) throws Exception {
+        final List<org.osgi.resource.Resource> resources = new ArrayList<org.osgi.resource.Resource>();
+        new R5RepoContentProvider().parseIndex(xml, baseUri, new IRepositoryIndexProcessor() {
+            public void processResource(org.osgi.resource.Resource resource) {
+                resources.add(resource);
+            }
+
+            public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
+                // ignore: the indexer doesn't create any referrals
+            }
+        }, logAdapter);
+        return resources;
+    }
+
 }
@@ -0,0 +1,55 @@
+package bndtools;
+
+import org.bndtools.core.resolve.BatchResolveJob;
+import org.bndtools.core.resolve.BatchResolveReport;
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
+import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.handlers.HandlerUtil;
+import org.eclipse.ui.progress.UIJob;
+
+public class ResolveAllHandler extends AbstractHandler {
+
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+        IWorkbenchWindow window = HandlerUtil.getActiveWorkbenchWindow(event);
+        final Shell shell = window.getShell();
+
+        final BatchResolveJob job = new BatchResolveJob();
+        final UIJob completionJob = new UIJob(shell.getDisplay(), "Display Batch Resolution Results") {
+            @Override
+            public IStatus runInUIThread(IProgressMonitor monitor) {
+                BatchResolveReport report = job.getReport();
+                if (report == null || shell.isDisposed())
+                    return Status.OK_STATUS;
+
+                // Details list the run descriptors that failed or resolve to different bundles
+                IStatus status = report.toStatus();
+                if (status.isOK())
+                    MessageDialog.openInformation(shell, "Resolve All", report.getSummary());
+                else
+                    ErrorDialog.openError(shell, "Resolve All", null, status, IStatus.INFO | IStatus.WARNING | IStatus.ERROR);
+                return Status.OK_STATUS;
+            }
+        };
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                completionJob.schedule();
+            }
+        });
+        job.setUser(true);
+        job.schedule();
+
+        return null;
+    }
+
+}
@@ -0,0 +1,421 @@
+package bndtools.central;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.bndtools.utils.repos.RepoUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.libg.glob.Glob;
+
+/**
+ * A searchable index of the package, identity and service capabilities of the bundles in all repositories, answering
+ * questions like "which bundles export package X, and in which versions?" without a resolve. The index covers every
+ * repository plugin that exposes R5 resources (i.e. implements {@link Repository}, as the indexed repositories do) and
+ * the workspace R5 repository.
+ * <p>
+ * The index is built on a background job when it is first used, and a repository is re-indexed when it reports a
+ * change. Searches only look at the in-memory index and never wait for the job; until the first build has completed
+ * they return incomplete results. Listeners are notified whenever the content of the index changes.
+ * </p>
+ */
+public class CapabilitySearchIndex implements RepositoryListenerPlugin {
+
+    public static final String SERVICE_NAMESPACE = "osgi.service";
+    private static final String SERVICE_OBJECTCLASS = "objectClass";
+    private static final String CACHE_REPOSITORY = "cache";
+
+    private static final ILogger logger = Logger.getLogger(CapabilitySearchIndex.class);
+
+    /**
+     * A capability found in the index.
+     */
+    public static final class Hit {
+        private final String namespace;
+        private final String name;
+        private final String version;
+        private final String repository;
+        private final String bsn;
+        private final String bundleVersion;
+
+        Hit(String namespace, String name, String version, String repository, String bsn, String bundleVersion) {
+            this.namespace = namespace;
+            this.name = name;
+            this.version = version;
+            this.repository = repository;
+            this.bsn = bsn;
+            this.bundleVersion = bundleVersion;
+        }
+
+        /**
+         * One of {@link PackageNamespace#PACKAGE_NAMESPACE}, {@link IdentityNamespace#IDENTITY_NAMESPACE} or
+         * {@link CapabilitySearchIndex#SERVICE_NAMESPACE}.
+         */
+        public String getNamespace() {
+            return namespace;
+        }
+
+        /**
+         * The package name, symbolic name or service interface name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The version of the capability, or null if it has none.
+         */
+        public String getVersion() {
+            return version;
+        }
+
+        public String getRepository() {
+            return repository;
+        }
+
+        public String getBsn() {
+            return bsn;
+        }
+
+        public String getBundleVersion() {
+            return bundleVersion;
+        }
+
+        @Override
+        public String toString() {
+            return namespace + ": " + name + (version != null ? " " + version : "") + " [" + repository + ": " + bsn + " " + bundleVersion + "]";
+        }
+    }
+
+    /**
+     * Immutable search structure: the distinct capability names in lower case, sorted, each with the hits that have
+     * that name.
+     */
+    private static final class Snapshot {
+        final String[] names;
+        final Hit[][] hits;
+
+        Snapshot(String[] names, Hit[][] hits) {
+            this.names = names;
+            this.hits = hits;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new String[0], new Hit[0][]);
+
+    // repository name -> hits; guarded by itself
+    private final Map<String,List<Hit>> hitsByRepository = new LinkedHashMap<String,List<Hit>>();
+    private volatile Snapshot snapshot = EMPTY;
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<Runnable>();
+    private final UpdateJob job = new UpdateJob();
+
+    private boolean started = false;
+    private long indexedWorkspaceEpoch = -1;
+
+    CapabilitySearchIndex() {}
+
+    /**
+     * Find the capabilities whose name matches the pattern. The pattern is a case-insensitive glob (e.g.
+     * {@code *.http.*}); a pattern without wildcards matches names containing it.
+     *
+     * @param limit
+     *            The maximum number of hits to return, or -1 for no limit.
+     */
+    public List<Hit> search(String pattern, int limit) {
+        refresh();
+
+        if (pattern == null || pattern.trim().length() == 0)
+            return Collections.emptyList();
+        String glob = pattern.trim().toLowerCase();
+        if (glob.indexOf('*') < 0 && glob.indexOf('?') < 0)
+            glob = "*" + glob + "*";
+
+        // The common "*text*" form is matched without a regular expression
+        String contained = null;
+        Pattern regex = null;
+        String inner = glob.length() >= 2 && glob.startsWith("*") && glob.endsWith("*") ? glob.substring(1, glob.length() - 1) : null;
+        if (inner != null && inner.indexOf('*') < 0 && inner.indexOf('?') < 0)
+            contained = inner;
+        else
+            regex = Glob.toPattern(glob);
+
+        Snapshot current = snapshot;
+        List<Hit> result = new ArrayList<Hit>();
+        for (int i = 0; i < current.names.length; i++) {
+            if (contained != null ? current.names[i].indexOf(contained) < 0 : !regex.matcher(current.names[i]).matches())
+                continue;
+            for (Hit hit : current.hits[i]) {
+                if (limit >= 0 && result.size() >= limit)
+                    return result;
+                result.add(hit);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Notify the listener, on an arbitrary thread, whenever the content of the index changes.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        if (isStarted())
+            job.update(repository);
+    }
+
+    public void bundleRemoved(RepositoryPlugin repository, Jar jar, File file) {
+        if (isStarted())
+            job.update(repository);
+    }
+
+    public void repositoryRefreshed(RepositoryPlugin repository) {
+        if (isStarted())
+            job.update(repository);
+    }
+
+    public void repositoriesRefreshed() {
+        if (isStarted())
+            job.updateAll();
+    }
+
+    private synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Start the initial build if it has not been started yet, and re-index the workspace repository if it has changed.
+     * Returns immediately; searching implies a refresh, but callers may refresh early so that the index is ready when
+     * the first search happens.
+     */
+    public void refresh() {
+        boolean updateAll = false;
+        boolean updateWorkspace = false;
+        synchronized (this) {
+            if (!started) {
+                started = true;
+                updateAll = true;
+            } else if (Central.r5Repository != null && Central.r5Repository.getEpoch() != indexedWorkspaceEpoch) {
+                updateWorkspace = true;
+            }
+        }
+        if (updateAll)
+            job.updateAll();
+        else if (updateWorkspace)
+            job.updateWorkspace();
+    }
+
+    private void index(String repositoryName, Repository repository) {
+        Requirement requirement = new CapReqBuilder(IdentityNamespace.IDENTITY_NAMESPACE).addDirective(Namespace.REQUIREMENT_FILTER_DIRECTIVE, "(" + IdentityNamespace.IDENTITY_NAMESPACE + "=*)").buildSyntheticRequirement();
+        Collection<Capability> identities = repository.findProviders(Collections.singleton(requirement)).get(requirement);
+
+        List<Hit> hits = new ArrayList<Hit>();
+        if (identities != null) {
+            for (Capability identity : identities) {
+                Resource resource = identity.getResource();
+                String bsn = asString(identity.getAttributes().get(IdentityNamespace.IDENTITY_NAMESPACE));
+                String bundleVersion = asString(identity.getAttributes().get(IdentityNamespace.CAPABILITY_VERSION_ATTRIBUTE));
+                if (bsn == null)
+                    continue;
+
+                hits.add(new Hit(IdentityNamespace.IDENTITY_NAMESPACE, bsn, bundleVersion, repositoryName, bsn, bundleVersion));
+                for (Capability cap : resource.getCapabilities(PackageNamespace.PACKAGE_NAMESPACE)) {
+                    String name = asString(cap.getAttributes().get(PackageNamespace.PACKAGE_NAMESPACE));
+                    if (name != null)
+                        hits.add(new Hit(PackageNamespace.PACKAGE_NAMESPACE, name, asString(cap.getAttributes().get(PackageNamespace.CAPABILITY_VERSION_ATTRIBUTE)), repositoryName, bsn, bundleVersion));
+                }
+                for (Capability cap : resource.getCapabilities(SERVICE_NAMESPACE)) {
+                    Object objectClass = cap.getAttributes().get(SERVICE_OBJECTCLASS);
+                    Collection< ? > names = objectClass instanceof Collection< ? > ? (Collection< ? >) objectClass : objectClass instanceof String[] ? Arrays.asList((String[]) objectClass) : Collections.singleton(objectClass);
+                    for (Object name : names) {
+                        if (name != null)
+                            hits.add(new Hit(SERVICE_NAMESPACE, name.toString(), null, repositoryName, bsn, bundleVersion));
+                    }
+                }
+            }
+        }
+
+        synchronized (hitsByRepository) {
+            hitsByRepository.put(repositoryName, hits);
+        }
+    }
+
+    private void remove(String repositoryName) {
+        synchronized (hitsByRepository) {
+            hitsByRepository.remove(repositoryName);
+        }
+    }
+
+    private void rebuildSnapshot() {
+        Map<String,List<Hit>> byName = new HashMap<String,List<Hit>>();
+        synchronized (hitsByRepository) {
+            for (List<Hit> hits : hitsByRepository.values()) {
+                for (Hit hit : hits) {
+                    String key = hit.getName().toLowerCase();
+                    List<Hit> list = byName.get(key);
+                    if (list == null) {
+                        list = new ArrayList<Hit>(2);
+                        byName.put(key, list);
+                    }
+                    list.add(hit);
+                }
+            }
+        }
+
+        List<Entry<String,List<Hit>>> entries = new ArrayList<Entry<String,List<Hit>>>(byName.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String,List<Hit>>>() {
+            public int compare(Entry<String,List<Hit>> o1, Entry<String,List<Hit>> o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        String[] names = new String[entries.size()];
+        Hit[][] hits = new Hit[entries.size()][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = entries.get(i).getKey();
+            hits[i] = entries.get(i).getValue().toArray(new Hit[0]);
+        }
+        snapshot = new Snapshot(names, hits);
+
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                logger.logError("Error notifying capability index listener", e);
+            }
+        }
+    }
+
+    private static String asString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Re-indexes the repositories that have been queued. Changes arriving while the job runs are picked up by a
+     * subsequent run.
+     */
+    private class UpdateJob extends Job {
+
+        private final Map<String,RepositoryPlugin> pending = new LinkedHashMap<String,RepositoryPlugin>();
+        private boolean pendingAll = false;
+        private boolean pendingWorkspace = false;
+
+        UpdateJob() {
+            super("Index Repository Capabilities");
+            setSystem(true);
+        }
+
+        synchronized void update(RepositoryPlugin repository) {
+            if (repository == null) {
+                pendingAll = true;
+            } else if (RepoUtils.isWorkspaceRepo(repository)) {
+                pendingWorkspace = true;
+            } else if (repository.getName() != null) {
+                pending.put(repository.getName(), repository);
+            }
+            schedule(500);
+        }
+
+        synchronized void updateAll() {
+            pendingAll = true;
+            schedule(500);
+        }
+
+        synchronized void updateWorkspace() {
+            pendingWorkspace = true;
+            schedule(500);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            List<RepositoryPlugin> repositories;
+            boolean all;
+            boolean workspace;
+            synchronized (this) {
+                all = pendingAll;
+                workspace = pendingAll || pendingWorkspace;
+                repositories = new ArrayList<RepositoryPlugin>(pending.values());
+                pendingAll = false;
+                pendingWorkspace = false;
+                pending.clear();
+            }
+
+            try {
+                if (all) {
+                    Workspace bndWorkspace = Central.getWorkspace();
+                    repositories = bndWorkspace.getPlugins(RepositoryPlugin.class);
+                    synchronized (hitsByRepository) {
+                        hitsByRepository.clear();
+                    }
+                }
+
+                monitor.beginTask(getName(), repositories.size() + (workspace ? 1 : 0));
+                if (workspace) {
+                    WorkspaceR5Repository r5Repository = Central.getWorkspaceR5Repository();
+                    long epoch = r5Repository.getEpoch();
+                    index(Central.getWorkspaceRepository().getName(), r5Repository);
+                    synchronized (CapabilitySearchIndex.this) {
+                        indexedWorkspaceEpoch = epoch;
+                    }
+                    monitor.worked(1);
+                }
+                for (RepositoryPlugin repository : repositories) {
+                    if (monitor.isCanceled())
+                        return Status.CANCEL_STATUS;
+                    if (CACHE_REPOSITORY.equals(repository.getName()))
+                        continue;
+                    try {
+                        if (repository instanceof Repository)
+                            index(repository.getName(), (Repository) repository);
+                        else
+                            remove(repository.getName());
+                    } catch (Exception e) {
+                        logger.logError(MessageFormat.format("Error indexing capabilities of repository {0}.", repository.getName()), e);
+                    }
+                    monitor.worked(1);
+                }
+            } catch (Exception e) {
+                logger.logError("Error indexing repository capabilities", e);
+            } finally {
+                rebuildSnapshot();
+                monitor.done();
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+}
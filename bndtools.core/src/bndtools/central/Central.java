@@ -38,6 +38,7 @@ import org.eclipse.jdt.core.JavaCore;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.Version;
+import org.osgi.service.coordinator.Coordinator;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
@@ -56,6 +57,9 @@ public class Central implements IStartupParticipant {
 
     static WorkspaceR5Repository r5Repository = null;
     static RepositoryPlugin workspaceRepo = null;
+    static final RepositoryEpochs repositoryEpochs = new RepositoryEpochs();
+    static final CapabilitySearchIndex capabilitySearchIndex = new CapabilitySearchIndex();
+    static final WorkspaceCoordinator coordinator = new WorkspaceCoordinator();
 
     static final AtomicBoolean indexValid = new AtomicBoolean(false);
     static final ConcurrentMap<String,Map<String,SortedSet<Version>>> exportedPackageMap = new ConcurrentHashMap<String,Map<String,SortedSet<Version>>>();
@@ -168,6 +172,8 @@ public class Central implements IStartupParticipant {
                                 if (file.getName().equals(Workspace.CNFDIR)) {
                                     if (workspace.refresh()) {
                                         changed.addAll(workspace.getCurrentProjects());
+                                        repositoryEpochs.repositoriesRefreshed();
+                                        capabilitySearchIndex.repositoriesRefreshed();
                                     }
                                     return false;
                                 }
@@ -224,6 +230,29 @@ public class Central implements IStartupParticipant {
         return r5Repository;
     }
 
+    /**
+     * Returns the change counters of the workspace's repositories.
+     */
+    public static RepositoryEpochs getRepositoryEpochs() {
+        return repositoryEpochs;
+    }
+
+    /**
+     * Returns the index of the package, identity and service capabilities in the workspace's repositories.
+     */
+    public static CapabilitySearchIndex getCapabilitySearchIndex() {
+        return capabilitySearchIndex;
+    }
+
+    /**
+     * Returns the coordinator registered with the workspace. Repository plugins defer updating their index (and, for
+     * version controlled repositories, committing) until the end of the current coordination, so a coordination
+     * should be begun around a series of puts.
+     */
+    public static Coordinator getCoordinator() {
+        return coordinator;
+    }
+
     public synchronized static RepositoryPlugin getWorkspaceRepository() throws Exception {
         if (workspaceRepo != null)
             return workspaceRepo;
@@ -247,6 +276,9 @@ public class Central implements IStartupParticipant {
             newWorkspace.addBasicPlugin(new WorkspaceListener(newWorkspace));
             newWorkspace.addBasicPlugin(instance.repoListenerTracker);
             newWorkspace.addBasicPlugin(getWorkspaceR5Repository());
+            newWorkspace.addBasicPlugin(repositoryEpochs);
+            newWorkspace.addBasicPlugin(capabilitySearchIndex);
+            newWorkspace.addBasicPlugin(coordinator);
 
             // Initialize projects in synchronized block
             newWorkspace.getBuildOrder();
@@ -307,6 +339,8 @@ public class Central implements IStartupParticipant {
                 IResourceDelta rootDelta = event.getDelta();
                 if (isCnfChanged(rootDelta)) {
                     workspace.refresh();
+                    repositoryEpochs.repositoriesRefreshed();
+                    capabilitySearchIndex.repositoriesRefreshed();
                 }
             }
         });
@@ -450,6 +484,8 @@ public class Central implements IStartupParticipant {
         List<Refreshable> rps = getWorkspace().getPlugins(Refreshable.class);
         for (Refreshable rp : rps) {
             if (rp.refresh()) {
+                repositoryEpochs.repositoriesRefreshed();
+                capabilitySearchIndex.repositoriesRefreshed();
                 File dir = rp.getRoot();
                 refreshFile(dir);
             }
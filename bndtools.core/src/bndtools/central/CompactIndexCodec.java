@@ -0,0 +1,309 @@
+package bndtools.central;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+
+/**
+ * Reads and writes a compact, gzip-compressed binary encoding of an OSGi R5 resource index. All strings (namespaces,
+ * attribute and directive names, package names etc.) are written once into a string table and afterwards referenced by
+ * number, so the reader also returns a single shared instance of each distinct string.
+ * <p>
+ * Content URLs are stored relative to the base URI where possible, so an index is relocatable in the same way as the
+ * XML format.
+ * </p>
+ */
+public final class CompactIndexCodec {
+
+    private static final byte[] MAGIC = new byte[] {
+            'B', 'N', 'D', 'X'
+    };
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_VERSION = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_DOUBLE = 3;
+    private static final int TYPE_URI = 4;
+    private static final int TYPE_LIST = 0x10;
+
+    private CompactIndexCodec() {}
+
+    /**
+     * Returns whether the stream starts with a compact index header. The stream must support mark/reset; it is reset to
+     * its original position before returning.
+     */
+    public static boolean isCompactIndex(InputStream stream) throws IOException {
+        stream.mark(MAGIC.length);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (stream.read() != MAGIC[i])
+                    return false;
+            }
+            return true;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    public static void write(Collection< ? extends Resource> resources, URI baseUri, OutputStream stream) throws IOException {
+        stream.write(MAGIC);
+        stream.write(FORMAT_VERSION);
+
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        Writer writer = new Writer(out, baseUri);
+
+        writeVarInt(out, resources.size());
+        for (Resource resource : resources) {
+            List<Capability> caps = resource.getCapabilities(null);
+            writeVarInt(out, caps.size());
+            for (Capability cap : caps)
+                writer.writeCapReq(cap.getNamespace(), cap.getAttributes(), cap.getDirectives());
+
+            List<Requirement> reqs = resource.getRequirements(null);
+            writeVarInt(out, reqs.size());
+            for (Requirement req : reqs)
+                writer.writeCapReq(req.getNamespace(), req.getAttributes(), req.getDirectives());
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    public static void read(InputStream stream, URI baseUri, IRepositoryIndexProcessor processor) throws IOException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (stream.read() != MAGIC[i])
+                throw new IOException("Not a compact index");
+        }
+        int version = stream.read();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported compact index version: " + version);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)));
+        Reader reader = new Reader(in, baseUri);
+
+        int resourceCount = readVarInt(in);
+        for (int r = 0; r < resourceCount; r++) {
+            ResourceBuilder resourceBuilder = new ResourceBuilder();
+
+            int capCount = readVarInt(in);
+            for (int i = 0; i < capCount; i++)
+                resourceBuilder.addCapability(reader.readCapReq());
+
+            int reqCount = readVarInt(in);
+            for (int i = 0; i < reqCount; i++)
+                resourceBuilder.addRequirement(reader.readCapReq());
+
+            processor.processResource(resourceBuilder.build());
+        }
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final URI baseUri;
+        private final Map<String,Integer> strings = new HashMap<String,Integer>();
+
+        Writer(DataOutputStream out, URI baseUri) {
+            this.out = out;
+            this.baseUri = baseUri;
+        }
+
+        void writeCapReq(String namespace, Map<String,Object> attribs, Map<String,String> directives) throws IOException {
+            writeString(namespace);
+
+            writeVarInt(out, attribs.size());
+            for (Entry<String,Object> entry : attribs.entrySet()) {
+                writeString(entry.getKey());
+                writeValue(entry.getValue());
+            }
+
+            writeVarInt(out, directives.size());
+            for (Entry<String,String> entry : directives.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value instanceof List< ? >) {
+                List< ? > list = (List< ? >) value;
+                int type = list.isEmpty() ? TYPE_STRING : typeOf(list.get(0));
+                out.writeByte(TYPE_LIST | type);
+                writeVarInt(out, list.size());
+                for (Object element : list)
+                    writeScalar(type, element);
+            } else {
+                int type = typeOf(value);
+                out.writeByte(type);
+                writeScalar(type, value);
+            }
+        }
+
+        private void writeScalar(int type, Object value) throws IOException {
+            switch (type) {
+            case TYPE_LONG :
+                out.writeLong(((Number) value).longValue());
+                break;
+            case TYPE_DOUBLE :
+                out.writeDouble(((Number) value).doubleValue());
+                break;
+            case TYPE_URI :
+                URI uri = (URI) value;
+                writeString(baseUri != null ? baseUri.relativize(uri).toString() : uri.toString());
+                break;
+            default :
+                writeString(String.valueOf(value));
+            }
+        }
+
+        private void writeString(String s) throws IOException {
+            Integer ref = strings.get(s);
+            if (ref != null) {
+                writeVarInt(out, ref.intValue());
+            } else {
+                strings.put(s, strings.size() + 1);
+                writeVarInt(out, 0);
+                byte[] bytes = s.getBytes("UTF-8");
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private static int typeOf(Object value) {
+            if (value instanceof Version)
+                return TYPE_VERSION;
+            if (value instanceof Long || value instanceof Integer)
+                return TYPE_LONG;
+            if (value instanceof Double || value instanceof Float)
+                return TYPE_DOUBLE;
+            if (value instanceof URI)
+                return TYPE_URI;
+            return TYPE_STRING;
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final URI baseUri;
+        private final List<String> strings = new ArrayList<String>();
+
+        Reader(DataInputStream in, URI baseUri) {
+            this.in = in;
+            this.baseUri = baseUri;
+        }
+
+        CapReqBuilder readCapReq() throws IOException {
+            CapReqBuilder builder = new CapReqBuilder(readString());
+
+            int attribCount = readVarInt(in);
+            for (int i = 0; i < attribCount; i++) {
+                String name = readString();
+                builder.addAttribute(name, readValue());
+            }
+
+            int directiveCount = readVarInt(in);
+            for (int i = 0; i < directiveCount; i++) {
+                String name = readString();
+                builder.addDirective(name, readString());
+            }
+
+            return builder;
+        }
+
+        private Object readValue() throws IOException {
+            int type = in.readByte();
+            if ((type & TYPE_LIST) != 0) {
+                int scalarType = type & ~TYPE_LIST;
+                int size = readVarInt(in);
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                    list.add(readScalar(scalarType));
+                return list;
+            }
+            return readScalar(type);
+        }
+
+        private Object readScalar(int type) throws IOException {
+            switch (type) {
+            case TYPE_VERSION :
+                return Version.parseVersion(readString());
+            case TYPE_LONG :
+                return Long.valueOf(in.readLong());
+            case TYPE_DOUBLE :
+                return Double.valueOf(in.readDouble());
+            case TYPE_URI :
+                // Content URLs were stored relative to the base URI, in case the workspace has moved
+                try {
+                    URI uri = new URI(readString());
+                    return baseUri != null && !uri.isAbsolute() ? baseUri.resolve(uri) : uri;
+                } catch (URISyntaxException e) {
+                    throw new IOException("Invalid URI in compact index: " + e.getMessage());
+                }
+            case TYPE_STRING :
+                return readString();
+            default :
+                throw new IOException("Unknown attribute type in compact index: " + type);
+            }
+        }
+
+        private String readString() throws IOException {
+            int ref = readVarInt(in);
+            if (ref > 0) {
+                if (ref > strings.size())
+                    throw new IOException("Invalid string reference in compact index: " + ref);
+                return strings.get(ref - 1);
+            }
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            String s = new String(bytes, "UTF-8");
+            strings.add(s);
+            return s;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed variable-length integer in compact index");
+    }
+
+}
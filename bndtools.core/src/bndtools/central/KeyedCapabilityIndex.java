@@ -0,0 +1,261 @@
+package bndtools.central;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.deployer.repository.MapToDictionaryAdapter;
+
+/**
+ * An inverted index of capabilities, keyed first by namespace and then by the value of the "primary" attribute of the
+ * namespace, i.e. the attribute with the same name as the namespace (e.g. the package name for
+ * {@code osgi.wiring.package}, or the symbolic name for {@code osgi.identity}). Capabilities are grouped by an owner key
+ * (e.g. a project) so that all the capabilities of one owner can be atomically replaced.
+ * <p>
+ * Lookups take a shared read lock and may proceed concurrently; replacing an owner's capabilities takes the exclusive
+ * write lock only for the duration of the in-memory update.
+ * </p>
+ *
+ * @param <K>
+ *            The type of the owner key.
+ */
+public class KeyedCapabilityIndex<K> {
+
+    /** Bucket key used for capabilities whose primary attribute is absent or not a simple string. */
+    private static final String NO_KEY = "";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // namespace -> primary attribute value -> owner -> capabilities
+    private final Map<String,Map<String,Map<K,List<Capability>>>> index = new HashMap<String,Map<String,Map<K,List<Capability>>>>();
+
+    // owner -> namespace -> primary attribute values under which the owner has capabilities
+    private final Map<K,Map<String,List<String>>> ownerKeys = new HashMap<K,Map<String,List<String>>>();
+
+    /**
+     * Replace all capabilities of the specified owner with the capabilities of the given resources.
+     */
+    public void replaceResources(K owner, Collection< ? extends Resource> resources) {
+        // Group the new capabilities outside of the lock
+        Map<String,Map<String,List<Capability>>> grouped = new HashMap<String,Map<String,List<Capability>>>();
+        for (Resource resource : resources) {
+            List<Capability> caps = resource.getCapabilities(null);
+            if (caps == null)
+                continue;
+            for (Capability cap : caps) {
+                String namespace = cap.getNamespace();
+                Map<String,List<Capability>> byKey = grouped.get(namespace);
+                if (byKey == null) {
+                    byKey = new HashMap<String,List<Capability>>();
+                    grouped.put(namespace, byKey);
+                }
+                String key = getPrimaryKey(cap);
+                List<Capability> list = byKey.get(key);
+                if (list == null) {
+                    list = new ArrayList<Capability>(1);
+                    byKey.put(key, list);
+                }
+                list.add(cap);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeOwnerUnlocked(owner);
+
+            Map<String,List<String>> keys = new HashMap<String,List<String>>(grouped.size());
+            for (Entry<String,Map<String,List<Capability>>> nsEntry : grouped.entrySet()) {
+                String namespace = nsEntry.getKey();
+                Map<String,Map<K,List<Capability>>> nsIndex = index.get(namespace);
+                if (nsIndex == null) {
+                    nsIndex = new HashMap<String,Map<K,List<Capability>>>();
+                    index.put(namespace, nsIndex);
+                }
+                List<String> nsKeys = new ArrayList<String>(nsEntry.getValue().size());
+                for (Entry<String,List<Capability>> keyEntry : nsEntry.getValue().entrySet()) {
+                    Map<K,List<Capability>> owners = nsIndex.get(keyEntry.getKey());
+                    if (owners == null) {
+                        owners = new LinkedHashMap<K,List<Capability>>(2);
+                        nsIndex.put(keyEntry.getKey(), owners);
+                    }
+                    owners.put(owner, keyEntry.getValue());
+                    nsKeys.add(keyEntry.getKey());
+                }
+                keys.put(namespace, nsKeys);
+            }
+            ownerKeys.put(owner, keys);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all capabilities of the specified owner.
+     */
+    public void removeOwner(K owner) {
+        lock.writeLock().lock();
+        try {
+            removeOwnerUnlocked(owner);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            ownerKeys.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeOwnerUnlocked(K owner) {
+        Map<String,List<String>> keys = ownerKeys.remove(owner);
+        if (keys == null)
+            return;
+        for (Entry<String,List<String>> entry : keys.entrySet()) {
+            Map<String,Map<K,List<Capability>>> nsIndex = index.get(entry.getKey());
+            if (nsIndex == null)
+                continue;
+            for (String key : entry.getValue()) {
+                Map<K,List<Capability>> owners = nsIndex.get(key);
+                if (owners != null) {
+                    owners.remove(owner);
+                    if (owners.isEmpty())
+                        nsIndex.remove(key);
+                }
+            }
+            if (nsIndex.isEmpty())
+                index.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Append all capabilities matching the requirement to the specified collection.
+     */
+    public void appendMatchingCapabilities(Requirement requirement, Collection< ? super Capability> matches) {
+        String namespace = requirement.getNamespace();
+        String filterStr = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+        Filter filter;
+        try {
+            filter = filterStr != null ? FrameworkUtil.createFilter(filterStr) : null;
+        } catch (InvalidSyntaxException e) {
+            // Assume no matches
+            return;
+        }
+        String key = filterStr != null ? extractPrimaryKey(namespace, filterStr) : null;
+
+        lock.readLock().lock();
+        try {
+            Map<String,Map<K,List<Capability>>> nsIndex = index.get(namespace);
+            if (nsIndex == null)
+                return;
+
+            if (key != null) {
+                // Only the bucket for the primary key, plus capabilities that could not be keyed, can match.
+                appendMatches(nsIndex.get(key), filter, matches);
+                if (!NO_KEY.equals(key))
+                    appendMatches(nsIndex.get(NO_KEY), filter, matches);
+            } else {
+                for (Map<K,List<Capability>> owners : nsIndex.values())
+                    appendMatches(owners, filter, matches);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the owners that currently have capabilities in the index.
+     */
+    public Collection<K> getOwners() {
+        lock.readLock().lock();
+        try {
+            return Collections.unmodifiableList(new ArrayList<K>(ownerKeys.keySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void appendMatches(Map<K,List<Capability>> owners, Filter filter, Collection< ? super Capability> matches) {
+        if (owners == null)
+            return;
+        for (List<Capability> caps : owners.values()) {
+            for (Capability cap : caps) {
+                if (filter == null || filter.match(new MapToDictionaryAdapter(cap.getAttributes())))
+                    matches.add(cap);
+            }
+        }
+    }
+
+    private static String getPrimaryKey(Capability cap) {
+        Object value = cap.getAttributes().get(cap.getNamespace());
+        return value instanceof String ? (String) value : NO_KEY;
+    }
+
+    /**
+     * Extract the value of a simple equality on the primary attribute of the namespace, if the filter is either that
+     * equality or a top-level conjunction containing it. Returns null if no such value can be determined, in which case
+     * all capabilities in the namespace must be checked.
+     */
+    static String extractPrimaryKey(String namespace, String filter) {
+        String prefix = "(" + namespace + "=";
+        String trimmed = filter.trim();
+
+        if (trimmed.startsWith(prefix))
+            return simpleValue(trimmed, prefix.length(), trimmed.length() - 1);
+
+        if (!trimmed.startsWith("(&"))
+            return null;
+
+        // Walk the top-level operands of the conjunction
+        int depth = 0;
+        int start = -1;
+        for (int i = 2; i < trimmed.length() - 1; i++) {
+            char c = trimmed.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                if (depth == 0)
+                    start = i;
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0 && start >= 0 && trimmed.startsWith(prefix, start)) {
+                    String value = simpleValue(trimmed, start + prefix.length(), i);
+                    if (value != null)
+                        return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String simpleValue(String filter, int start, int end) {
+        if (end <= start || filter.charAt(end) != ')')
+            return null;
+        String value = filter.substring(start, end);
+        // Wildcards, escapes and nested expressions cannot be used as an exact key
+        if (value.indexOf('*') >= 0 || value.indexOf('\\') >= 0 || value.indexOf('(') >= 0 || value.indexOf(')') >= 0)
+            return null;
+        return value;
+    }
+
+}
@@ -0,0 +1,58 @@
+package bndtools.central;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+
+/**
+ * Keeps a change counter ("epoch") per repository, incremented whenever a repository reports that its content has
+ * changed. A snapshot of the epochs can be used as part of a cache key for results derived from repository content.
+ */
+public class RepositoryEpochs implements RepositoryListenerPlugin {
+
+    private final Map<String,Long> epochs = new TreeMap<String,Long>();
+    private long globalEpoch = 0;
+
+    public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+        increment(repository);
+    }
+
+    public void bundleRemoved(RepositoryPlugin repository, Jar jar, File file) {
+        increment(repository);
+    }
+
+    public void repositoryRefreshed(RepositoryPlugin repository) {
+        increment(repository);
+    }
+
+    public synchronized void repositoriesRefreshed() {
+        globalEpoch++;
+    }
+
+    private synchronized void increment(RepositoryPlugin repository) {
+        String name = repository != null ? repository.getName() : null;
+        if (name == null) {
+            globalEpoch++;
+            return;
+        }
+        Long epoch = epochs.get(name);
+        epochs.put(name, epoch == null ? 1L : epoch + 1L);
+    }
+
+    /**
+     * Returns a string that changes whenever any repository reports a change, and otherwise stays the same.
+     */
+    public synchronized String snapshot() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(globalEpoch);
+        for (Entry<String,Long> entry : epochs.entrySet())
+            builder.append(';').append(entry.getKey()).append('=').append(entry.getValue());
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,254 @@
+package bndtools.central;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.osgi.framework.Bundle;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.CoordinationException;
+import org.osgi.service.coordinator.Coordinator;
+import org.osgi.service.coordinator.Participant;
+
+/**
+ * A minimal {@link Coordinator} that is registered as a plugin of the bnd workspace, so that repository plugins can
+ * take part in coordinations begun by bndtools. Repositories that participate defer expensive work, such as
+ * regenerating their index or committing to version control, until the coordination ends; putting a number of bundles
+ * within one coordination therefore updates each repository only once.
+ * <p>
+ * Coordinations are only bound to a thread when they are pushed. Timeouts are not enforced, and coordinations are not
+ * associated with a bundle.
+ * </p>
+ */
+public class WorkspaceCoordinator implements Coordinator {
+
+    private static final ILogger logger = Logger.getLogger(WorkspaceCoordinator.class);
+
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long,CoordinationImpl> coordinations = new ConcurrentHashMap<Long,CoordinationImpl>();
+    private final ThreadLocal<LinkedList<CoordinationImpl>> stacks = new ThreadLocal<LinkedList<CoordinationImpl>>() {
+        @Override
+        protected LinkedList<CoordinationImpl> initialValue() {
+            return new LinkedList<CoordinationImpl>();
+        }
+    };
+
+    WorkspaceCoordinator() {}
+
+    public Coordination create(String name, long timeMillis) {
+        CoordinationImpl coordination = new CoordinationImpl(ids.incrementAndGet(), name);
+        coordinations.put(coordination.getId(), coordination);
+        return coordination;
+    }
+
+    public Coordination begin(String name, long timeMillis) {
+        return create(name, timeMillis).push();
+    }
+
+    public Coordination peek() {
+        LinkedList<CoordinationImpl> stack = stacks.get();
+        return stack.isEmpty() ? null : stack.getFirst();
+    }
+
+    public Coordination pop() {
+        LinkedList<CoordinationImpl> stack = stacks.get();
+        if (stack.isEmpty())
+            return null;
+        CoordinationImpl coordination = stack.removeFirst();
+        coordination.popped();
+        return coordination;
+    }
+
+    public boolean fail(Throwable cause) {
+        Coordination coordination = peek();
+        return coordination != null && coordination.fail(cause);
+    }
+
+    public boolean addParticipant(Participant participant) {
+        Coordination coordination = peek();
+        if (coordination == null)
+            return false;
+        coordination.addParticipant(participant);
+        return true;
+    }
+
+    public Collection<Coordination> getCoordinations() {
+        return new ArrayList<Coordination>(coordinations.values());
+    }
+
+    public Coordination getCoordination(long id) {
+        return coordinations.get(id);
+    }
+
+    private class CoordinationImpl implements Coordination {
+        private final long id;
+        private final String name;
+        private final List<Participant> participants = new ArrayList<Participant>();
+        private final Map<Class< ? >,Object> variables = new HashMap<Class< ? >,Object>();
+
+        private Thread thread = null;
+        private CoordinationImpl enclosing = null;
+        private Throwable failure = null;
+        private boolean terminated = false;
+
+        CoordinationImpl(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void end() {
+            synchronized (this) {
+                if (thread != null && thread != Thread.currentThread())
+                    throw new CoordinationException("Coordination is pushed on another thread", this, CoordinationException.WRONG_THREAD);
+            }
+            stacks.get().remove(this);
+
+            List<Participant> toNotify;
+            synchronized (this) {
+                thread = null;
+                if (terminated) {
+                    if (failure != null)
+                        throw new CoordinationException("Coordination has failed", this, CoordinationException.FAILED, failure);
+                    throw new CoordinationException("Coordination has already ended", this, CoordinationException.ALREADY_ENDED);
+                }
+                toNotify = terminate();
+            }
+
+            Exception partialFailure = null;
+            for (Participant participant : toNotify) {
+                try {
+                    participant.ended(this);
+                } catch (Exception e) {
+                    logger.logError("Coordination participant failed to end: " + name, e);
+                    if (partialFailure == null)
+                        partialFailure = e;
+                }
+            }
+            if (partialFailure != null)
+                throw new CoordinationException("One or more participants failed to end", this, CoordinationException.PARTIALLY_ENDED, partialFailure);
+        }
+
+        public boolean fail(Throwable cause) {
+            List<Participant> toNotify;
+            synchronized (this) {
+                if (terminated)
+                    return false;
+                failure = cause;
+                toNotify = terminate();
+            }
+
+            for (Participant participant : toNotify) {
+                try {
+                    participant.failed(this);
+                } catch (Exception e) {
+                    logger.logError("Coordination participant failed to handle failure: " + name, e);
+                }
+            }
+            return true;
+        }
+
+        private List<Participant> terminate() {
+            terminated = true;
+            coordinations.remove(id);
+            notifyAll();
+            return new ArrayList<Participant>(participants);
+        }
+
+        public synchronized Throwable getFailure() {
+            return failure;
+        }
+
+        public synchronized boolean isTerminated() {
+            return terminated;
+        }
+
+        public void addParticipant(Participant participant) {
+            synchronized (this) {
+                if (terminated)
+                    throw new CoordinationException("Coordination has already terminated", this, failure != null ? CoordinationException.FAILED : CoordinationException.ALREADY_ENDED,
+                            failure);
+                for (Participant existing : participants) {
+                    if (existing == participant)
+                        return;
+                }
+                participants.add(participant);
+            }
+        }
+
+        public synchronized List<Participant> getParticipants() {
+            return Collections.unmodifiableList(new ArrayList<Participant>(participants));
+        }
+
+        public Map<Class< ? >,Object> getVariables() {
+            return variables;
+        }
+
+        public long extendTimeout(long timeMillis) {
+            return 0;
+        }
+
+        public synchronized void join(long timeMillis) throws InterruptedException {
+            long deadline = timeMillis > 0 ? System.currentTimeMillis() + timeMillis : Long.MAX_VALUE;
+            while (!terminated) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return;
+                wait(timeMillis > 0 ? remaining : 0);
+            }
+        }
+
+        public Coordination push() {
+            LinkedList<CoordinationImpl> stack = stacks.get();
+            synchronized (this) {
+                if (terminated)
+                    throw new CoordinationException("Coordination has already terminated", this, failure != null ? CoordinationException.FAILED : CoordinationException.ALREADY_ENDED,
+                            failure);
+                if (thread != null)
+                    throw new CoordinationException("Coordination is already pushed", this, CoordinationException.ALREADY_PUSHED);
+                thread = Thread.currentThread();
+                enclosing = stack.isEmpty() ? null : stack.getFirst();
+            }
+            stack.addFirst(this);
+            return this;
+        }
+
+        synchronized void popped() {
+            thread = null;
+            enclosing = null;
+        }
+
+        public synchronized Thread getThread() {
+            return thread;
+        }
+
+        public Bundle getBundle() {
+            return null;
+        }
+
+        public synchronized Coordination getEnclosingCoordination() {
+            return enclosing;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [" + id + "]";
+        }
+    }
+
+}
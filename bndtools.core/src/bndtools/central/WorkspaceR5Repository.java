@@ -1,17 +1,24 @@
 package bndtools.central;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
@@ -27,7 +34,6 @@ import org.osgi.service.repository.Repository;
 
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
-import aQute.bnd.deployer.repository.CapabilityIndex;
 import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
 import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
 import aQute.bnd.deployer.repository.api.Referral;
@@ -38,7 +44,15 @@ public class WorkspaceR5Repository implements Repository {
 
     private static final String NAME = "Workspace";
 
-    private final Map<IProject,CapabilityIndex> projectMap = new HashMap<IProject,CapabilityIndex>();
+    private final KeyedCapabilityIndex<IProject> index = new KeyedCapabilityIndex<IProject>();
+
+    // Guards against an older index (e.g. from startup) replacing a newer one (e.g. from a build)
+    private final AtomicLong loadSequence = new AtomicLong();
+    private final Map<IProject,Long> loadedSequences = new HashMap<IProject,Long>();
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final CountDownLatch initialLoad = new CountDownLatch(1);
+
     private final IRepositoryContentProvider contentProvider = new R5RepoContentProvider();
 
     private final ILogger logger = Logger.getLogger(WorkspaceR5Repository.class);
@@ -49,17 +63,13 @@ public class WorkspaceR5Repository implements Repository {
      */
     WorkspaceR5Repository() {}
 
-    void init() throws Exception {
+    void init() {
 
         if (!Central.isWorkspaceReady()) {
             Central.onWorkspaceInit(new Function<Workspace,Void>() {
 
                 public Void run(Workspace a) {
-                    try {
-                        setupProjects();
-                    } catch (Exception e) {
-                        logger.logError("Error initializing workspace repository", e);
-                    }
+                    setupProjects();
                     return null;
                 }
             });
@@ -68,22 +78,89 @@ public class WorkspaceR5Repository implements Repository {
         }
     }
 
-    void setupProjects() throws Exception {
-        IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
-        for (IProject project : projects) {
-            Project model = Central.getProject(project.getLocation().toFile());
-            if (model != null) {
-                File targetDir = getTarget(model);
-                if (targetDir != null) {
-                    File indexFile = new File(targetDir, ".index");
-                    if (indexFile != null && indexFile.isFile()) {
-                        loadProjectIndex(project, new FileInputStream(indexFile), project.getLocation().toFile().toURI());
-                    }
+    void setupProjects() {
+        // Until the index loads are all submitted, a failure must still release the resolves waiting for them
+        boolean submitted = false;
+        try {
+            IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
+
+            final List<IProject> toLoad = new ArrayList<IProject>(projects.length);
+            final List<Project> models = new ArrayList<Project>(projects.length);
+            for (IProject project : projects) {
+                Project model = Central.getProject(project.getLocation().toFile());
+                if (model != null) {
+                    toLoad.add(project);
+                    models.add(model);
+                }
+            }
+
+            if (toLoad.isEmpty())
+                return;
+
+            // The repository is usable immediately; project capabilities are added as each index is parsed.
+            int threads = Math.min(toLoad.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Workspace Repository Index Loader " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
                 }
+            });
+            final AtomicInteger remaining = new AtomicInteger(toLoad.size());
+            for (int i = 0; i < toLoad.size(); i++) {
+                final IProject project = toLoad.get(i);
+                final Project model = models.get(i);
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            loadProjectIndex(project, model);
+                        } catch (Exception e) {
+                            logger.logError(MessageFormat.format("Failed to load index file for bundles in project {0}.", project.getName()), e);
+                        } finally {
+                            if (remaining.decrementAndGet() == 0)
+                                initialLoad.countDown();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            submitted = true;
+        } catch (Exception e) {
+            logger.logError("Error initializing workspace repository", e);
+        } finally {
+            if (!submitted)
+                initialLoad.countDown();
+        }
+    }
+
+    private void loadProjectIndex(IProject project, Project model) throws IOException {
+        File targetDir = getTarget(model);
+        if (targetDir != null) {
+            File indexFile = new File(targetDir, ".index");
+            if (indexFile.isFile()) {
+                loadProjectIndex(project, new FileInputStream(indexFile), project.getLocation().toFile().toURI());
             }
         }
     }
 
+    /**
+     * Returns whether the indexes of all projects present at startup have been loaded.
+     */
+    public boolean isInitialLoadComplete() {
+        return initialLoad.getCount() == 0;
+    }
+
+    /**
+     * Wait until the indexes of all projects present at startup have been loaded.
+     *
+     * @return {@code true} if loading completed, {@code false} if the timeout elapsed first.
+     */
+    public boolean waitForInitialLoad(long timeout, TimeUnit unit) throws InterruptedException {
+        return initialLoad.await(timeout, unit);
+    }
+
     // This is equivalent to Project.getTarget0(). It gets the target dir without a prepare,
     // which would initialise the plugins too early.
     private File getTarget(Project project) throws IOException {
@@ -97,54 +174,70 @@ public class WorkspaceR5Repository implements Repository {
         return target;
     }
 
-    public void loadProjectIndex(final IProject project, InputStream index, URI baseUri) {
-        synchronized (projectMap) {
-            try {
-                cleanProject(project);
-
-                IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
-                    public void processResource(Resource resource) {
-                        addResource(project, resource);
-                    }
+    /**
+     * Load the index of a project, replacing any capabilities previously loaded for it. The index may be either in the
+     * standard R5 XML format or in the compact format written by {@link CompactIndexCodec}.
+     */
+    public void loadProjectIndex(final IProject project, InputStream indexStream, URI baseUri) {
+        long sequence = loadSequence.incrementAndGet();
+
+        // Parse outside of any lock, then atomically swap in the project's capabilities
+        final List<Resource> resources = new ArrayList<Resource>();
+        try {
+            IRepositoryIndexProcessor processor = new IRepositoryIndexProcessor() {
+                public void processResource(Resource resource) {
+                    resources.add(resource);
+                }
 
-                    public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
-                        // ignore: we don't create any referrals
-                    }
-                };
-                contentProvider.parseIndex(index, baseUri, processor, logAdapter);
-            } catch (Exception e) {
-                logger.logError(MessageFormat.format("Failed to process index file for bundles in project {0}.", project.getName()), e);
-            } finally {
-                IO.close(index);
-            }
+                public void processReferral(URI parentUri, Referral referral, int maxDepth, int currentDepth) {
+                    // ignore: we don't create any referrals
+                }
+            };
+            InputStream stream = indexStream.markSupported() ? indexStream : new BufferedInputStream(indexStream);
+            if (CompactIndexCodec.isCompactIndex(stream))
+                CompactIndexCodec.read(stream, baseUri, processor);
+            else
+                contentProvider.parseIndex(stream, baseUri, processor, logAdapter);
+        } catch (Exception e) {
+            logger.logError(MessageFormat.format("Failed to process index file for bundles in project {0}.", project.getName()), e);
+            resources.clear();
+        } finally {
+            IO.close(indexStream);
         }
+        replaceProject(project, resources, sequence);
     }
 
-    private void cleanProject(IProject project) {
-        CapabilityIndex index = projectMap.get(project);
-        if (index != null)
-            index.clear();
+    /**
+     * Replace the capabilities of a project with those of the given, already parsed, resources.
+     */
+    public void loadProjectResources(IProject project, Collection< ? extends Resource> resources) {
+        replaceProject(project, resources, loadSequence.incrementAndGet());
     }
 
-    private void addResource(IProject project, Resource resource) {
-        CapabilityIndex index = projectMap.get(project);
-        if (index == null) {
-            index = new CapabilityIndex();
-            projectMap.put(project, index);
+    private void replaceProject(IProject project, Collection< ? extends Resource> resources, long sequence) {
+        synchronized (loadedSequences) {
+            Long loaded = loadedSequences.get(project);
+            if (loaded != null && loaded.longValue() > sequence)
+                return;
+            loadedSequences.put(project, sequence);
+            index.replaceResources(project, resources);
+            epoch.incrementAndGet();
         }
-        index.addResource(resource);
+    }
+
+    /**
+     * Returns a counter that is incremented whenever the content of the repository changes.
+     */
+    public long getEpoch() {
+        return epoch.get();
     }
 
     public Map<Requirement,Collection<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
         Map<Requirement,Collection<Capability>> result = new HashMap<Requirement,Collection<Capability>>();
         for (Requirement requirement : requirements) {
-            List<Capability> matches = new LinkedList<Capability>();
+            List<Capability> matches = new ArrayList<Capability>();
+            index.appendMatchingCapabilities(requirement, matches);
             result.put(requirement, matches);
-
-            for (Entry<IProject,CapabilityIndex> entry : projectMap.entrySet()) {
-                CapabilityIndex capabilityIndex = entry.getValue();
-                capabilityIndex.appendMatchingCapabilities(requirement, matches);
-            }
         }
         return result;
     }
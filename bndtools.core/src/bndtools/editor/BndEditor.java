@@ -257,8 +257,11 @@ public class BndEditor extends ExtendedFormEditor implements IResourceChangeList
                 return;
             }
 
-            // Create resolver job and pre-validate
+            // Create resolver job and pre-validate. Saves usually change the requirements only slightly, so
+            // start from the previous solution.
             final ResolveJob job = new ResolveJob(model);
+            job.setIncremental(true);
+            job.setUseCache(true);
             IStatus validation = job.validateBeforeRun();
             if (!validation.isOK()) {
                 String message = "Unable to run the resolver. NB.: the file will still be saved.";
@@ -13,6 +13,7 @@ import java.util.List;
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
 import org.bndtools.api.ResolveMode;
+import org.bndtools.core.resolve.ResolutionResult;
 import org.bndtools.core.resolve.ResolutionResult.Outcome;
 import org.bndtools.core.resolve.ResolveJob;
 import org.bndtools.core.resolve.ui.ResolutionWizard;
@@ -339,8 +340,9 @@ public class RunRequirementsPart extends SectionPart implements PropertyChangeLi
         job.addJobChangeListener(new JobChangeAdapter() {
             @Override
             public void done(IJobChangeEvent event) {
-                Outcome outcome = job.getResolutionResult().getOutcome();
-                if (outcome != Outcome.Cancelled)
+                // A resolve that ran out of time carries a partial diagnosis, so show it unlike a user cancellation
+                ResolutionResult result = job.getResolutionResult();
+                if (result.getOutcome() != Outcome.Cancelled || !result.getStatus().isOK())
                     parentShell.getDisplay().asyncExec(showResult);
             }
         });
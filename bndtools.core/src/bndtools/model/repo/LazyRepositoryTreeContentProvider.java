@@ -0,0 +1,152 @@
+package bndtools.model.repo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+
+/**
+ * Adapts a {@link RepositoryTreeContentProvider} for a {@link TreeViewer} on a tree created with {@code SWT.VIRTUAL}.
+ * Only the items of visible rows are created, so expanding a repository with tens of thousands of bundles no longer
+ * creates an item for every bundle. The children of an element are obtained from the wrapped provider when the viewer
+ * asks for their count, and kept until the viewer asks again (i.e. on refresh). Elements are only marked as having
+ * children, so the versions of a bundle are not queried until the bundle is expanded.
+ * <p>
+ * Viewer filters and sorters are not supported by virtual trees; filtering is done by the wrapped provider. Expanding
+ * elements through the viewer only works for elements whose items have been created, so use
+ * {@link #expandToLevel(int)} and {@link #expand(Object)} instead.
+ * </p>
+ */
+public class LazyRepositoryTreeContentProvider implements ILazyTreeContentProvider {
+
+    private final RepositoryTreeContentProvider delegate;
+    private final Map<Object,Object[]> children = new HashMap<Object,Object[]>();
+
+    private TreeViewer viewer;
+    private Object input;
+
+    public LazyRepositoryTreeContentProvider(RepositoryTreeContentProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        this.viewer = (TreeViewer) viewer;
+        this.input = newInput;
+        children.clear();
+        delegate.inputChanged(viewer, oldInput, newInput);
+    }
+
+    public void dispose() {
+        children.clear();
+        delegate.dispose();
+    }
+
+    public void updateChildCount(Object element, int currentChildCount) {
+        Object[] elementChildren = loadChildren(element);
+        if (elementChildren.length != currentChildCount)
+            viewer.setChildCount(element, elementChildren.length);
+    }
+
+    public void updateElement(Object parent, int index) {
+        Object[] parentChildren = getChildren(parent);
+        if (index >= parentChildren.length)
+            return;
+
+        createItem(parent, index, parentChildren[index]);
+    }
+
+    public Object getParent(Object element) {
+        Object parent = delegate.getParent(element);
+        return parent != null ? parent : input;
+    }
+
+    /**
+     * Expand the tree so that the given number of levels is shown, as {@link TreeViewer#expandToLevel(int)} does for a
+     * tree that is not virtual.
+     */
+    public void expandToLevel(int level) {
+        expandToLevel(input, level);
+    }
+
+    private void expandToLevel(Object parent, int level) {
+        if (level <= 1)
+            return;
+
+        Object[] elements = getChildren(parent);
+        viewer.setChildCount(parent, elements.length);
+        for (int i = 0; i < elements.length; i++) {
+            Object element = elements[i];
+            if (createItem(parent, i, element)) {
+                viewer.setExpandedState(element, true);
+                expandToLevel(element, level - 1);
+            }
+        }
+    }
+
+    /**
+     * Expand an element and its ancestors, creating their items first.
+     *
+     * @return false if the element is not in the tree
+     */
+    public boolean expand(Object element) {
+        List<Object> path = new LinkedList<Object>();
+        for (Object segment = element; segment != null && segment != input; segment = delegate.getParent(segment))
+            path.add(0, segment);
+
+        Object parent = input;
+        for (Object segment : path) {
+            Object[] elements = getChildren(parent);
+            int index = Arrays.asList(elements).indexOf(segment);
+            if (index < 0)
+                return false;
+
+            viewer.setChildCount(parent, elements.length);
+            createItem(parent, index, segment);
+            viewer.setExpandedState(segment, true);
+            parent = segment;
+        }
+        return true;
+    }
+
+    /**
+     * Create the item of an element, returning whether it has children.
+     */
+    private boolean createItem(Object parent, int index, Object element) {
+        boolean hasChildren = delegate.hasChildren(element);
+        viewer.replace(parent, index, element);
+        viewer.setHasChildren(element, hasChildren);
+        return hasChildren;
+    }
+
+    private Object[] getChildren(Object parent) {
+        Object[] parentChildren = children.get(parent);
+        return parentChildren != null ? parentChildren : loadChildren(parent);
+    }
+
+    private Object[] loadChildren(Object element) {
+        Object[] result = element == input ? delegate.getElements(element) : delegate.getChildren(element);
+        if (result == null)
+            result = new Object[0];
+
+        // Forget the children of elements that are no longer present
+        Object[] previous = children.put(element, result);
+        if (previous != null && previous.length > 0) {
+            Set<Object> current = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+            current.addAll(Arrays.asList(result));
+            for (Object old : previous) {
+                if (!current.contains(old))
+                    children.remove(old);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,23 @@
+package bndtools.model.repo;
+
+/**
+ * Placeholder shown in the repository tree while the children of an element are being loaded in the background.
+ */
+public class LoadingContentElement {
+
+    private final Object parent;
+
+    public LoadingContentElement(Object parent) {
+        this.parent = parent;
+    }
+
+    public Object getParent() {
+        return parent;
+    }
+
+    @Override
+    public String toString() {
+        return "Loading...";
+    }
+
+}
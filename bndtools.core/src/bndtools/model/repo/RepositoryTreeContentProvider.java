@@ -6,13 +6,22 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
+import org.bndtools.utils.swt.SWTConcurrencyUtil;
 import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
 
 import aQute.bnd.build.Project;
@@ -21,18 +30,45 @@ import aQute.bnd.osgi.Builder;
 import aQute.bnd.service.IndexProvider;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.service.ResolutionPhase;
+import aQute.bnd.service.repository.SearchableRepository;
 import aQute.bnd.version.Version;
+import aQute.libg.glob.Glob;
+import bndtools.central.CapabilitySearchIndex;
+import bndtools.central.CapabilitySearchIndex.Hit;
+import bndtools.central.Central;
 
 public class RepositoryTreeContentProvider implements ITreeContentProvider {
 
     private static final String CACHE_REPOSITORY = "cache";
     private static final ILogger logger = Logger.getLogger(RepositoryTreeContentProvider.class);
 
+    private static final int LOADER_THREADS = 4;
+    private static ExecutorService loader = null;
+
     private final EnumSet<ResolutionPhase> phases;
 
-    private String filter = null;
+    private volatile String filter = null;
     private boolean showRepos = true;
 
+    private boolean deferred = false;
+    private TreeViewer viewer = null;
+    private final Map<RepositoryPlugin,RepositoryContents> contents = new HashMap<RepositoryPlugin,RepositoryContents>();
+
+    // Bundles providing a capability that matches the filter, as repository name + "\n" + BSN; guarded by contents
+    private String capabilityFilter = null;
+    private Set<String> capabilityMatches = null;
+
+    private final Runnable capabilityIndexListener = new Runnable() {
+        public void run() {
+            synchronized (contents) {
+                capabilityFilter = null;
+                capabilityMatches = null;
+            }
+            if (filter != null)
+                refreshLater(null);
+        }
+    };
+
     public RepositoryTreeContentProvider() {
         this.phases = EnumSet.allOf(ResolutionPhase.class);
     }
@@ -61,6 +97,51 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return showRepos;
     }
 
+    /**
+     * In deferred mode the bundles of a repository and the versions of a bundle are queried on a background thread.
+     * Until they are available a {@link LoadingContentElement} is returned as the only child, and the parent is
+     * refreshed in the viewer once the query completes. Query results are cached per repository until
+     * {@link #invalidate(RepositoryPlugin)} is called or the input changes. The complete list of bundles of a
+     * repository is fetched once and the filter is applied to the cached list, except for searchable repositories which
+     * are queried with the filter. A bundle also matches the filter if it provides a package, service or identity
+     * capability whose name matches, according to the {@link CapabilitySearchIndex}. Deferred mode requires a
+     * {@link TreeViewer}.
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+        invalidateAll();
+
+        CapabilitySearchIndex index = Central.getCapabilitySearchIndex();
+        index.removeListener(capabilityIndexListener);
+        if (deferred) {
+            index.addListener(capabilityIndexListener);
+            index.refresh();
+        }
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Discard the cached contents of a repository, e.g. after the repository has been refreshed. Only relevant in
+     * deferred mode; the caller should refresh the repository in the viewer. May be called from any thread.
+     */
+    public void invalidate(RepositoryPlugin repo) {
+        synchronized (contents) {
+            contents.remove(repo);
+        }
+    }
+
+    /**
+     * Discard the cached contents of all repositories. May be called from any thread.
+     */
+    public void invalidateAll() {
+        synchronized (contents) {
+            contents.clear();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public Object[] getElements(Object inputElement) {
         Collection<Object> result;
@@ -81,19 +162,26 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         return result.toArray(new Object[result.size()]);
     }
 
-    public void dispose() {}
+    public void dispose() {
+        viewer = null;
+        invalidateAll();
+        Central.getCapabilitySearchIndex().removeListener(capabilityIndexListener);
+    }
 
-    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {}
+    public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+        this.viewer = viewer instanceof TreeViewer ? (TreeViewer) viewer : null;
+        invalidateAll();
+    }
 
     public Object[] getChildren(Object parentElement) {
         Object[] result = null;
 
         if (parentElement instanceof RepositoryPlugin) {
             RepositoryPlugin repo = (RepositoryPlugin) parentElement;
-            result = getRepositoryBundles(repo);
+            result = deferred && viewer != null ? getDeferredRepositoryBundles(repo) : getRepositoryBundles(repo);
         } else if (parentElement instanceof RepositoryBundle) {
             RepositoryBundle bundle = (RepositoryBundle) parentElement;
-            result = getRepositoryBundleVersions(bundle);
+            result = deferred && viewer != null ? getDeferredRepositoryBundleVersions(bundle) : getRepositoryBundleVersions(bundle);
         } else if (parentElement instanceof Project) {
             Project project = (Project) parentElement;
             result = getProjectBundles(project);
@@ -109,6 +197,9 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
         if (element instanceof RepositoryBundleVersion) {
             return ((RepositoryBundleVersion) element).getBundle();
         }
+        if (element instanceof LoadingContentElement) {
+            return ((LoadingContentElement) element).getParent();
+        }
         return null;
     }
 
@@ -205,20 +296,192 @@ public class RepositoryTreeContentProvider implements ITreeContentProvider {
     Object[] getRepositoryBundles(RepositoryPlugin repo) {
         Object[] result = null;
 
+        List<String> bsns = listRepositoryBundles(repo, filter);
+        if (bsns != null) {
+            result = new RepositoryBundle[bsns.size()];
+            int i = 0;
+            for (String bsn : bsns) {
+                result[i++] = new RepositoryBundle(repo, bsn);
+            }
+            result = completeRepositoryBundles(repo, result);
+        }
+        return result;
+    }
+
+    /**
+     * Allows subclasses to add elements after the bundles of a repository.
+     */
+    Object[] completeRepositoryBundles(RepositoryPlugin repo, Object[] bundles) {
+        return bundles;
+    }
+
+    private static List<String> listRepositoryBundles(RepositoryPlugin repo, String pattern) {
         List<String> bsns = null;
         try {
-            bsns = repo.list(filter);
+            bsns = repo.list(pattern);
         } catch (Exception e) {
             logger.logError(MessageFormat.format("Error querying repository {0}.", repo.getName()), e);
         }
         if (bsns != null) {
+            bsns = new ArrayList<String>(bsns);
             Collections.sort(bsns);
-            result = new RepositoryBundle[bsns.size()];
-            int i = 0;
-            for (String bsn : bsns) {
-                result[i++] = new RepositoryBundle(repo, bsn);
+        }
+        return bsns;
+    }
+
+    private Object[] getDeferredRepositoryBundles(final RepositoryPlugin repo) {
+        // Searchable repositories may return more than the glob matches, so they are queried with the filter
+        String currentFilter = filter;
+        final String query = repo instanceof SearchableRepository ? currentFilter : null;
+        Glob glob = query == null && currentFilter != null ? new Glob(currentFilter) : null;
+        Set<String> providers = glob != null ? getCapabilityMatches(currentFilter) : null;
+        String providerPrefix = repo.getName() + "\n";
+
+        final RepositoryContents repoContents;
+        synchronized (contents) {
+            repoContents = getContents(repo);
+            List<String> bsns = repoContents.bundleLists.get(query);
+            if (bsns != null) {
+                List<Object> result = new ArrayList<Object>(bsns.size());
+                for (String bsn : bsns) {
+                    if (glob != null && !glob.matcher(bsn).matches() && !providers.contains(providerPrefix + bsn))
+                        continue;
+                    // Reuse the bundle elements so the viewer keeps their expansion and selection state
+                    RepositoryBundle bundle = repoContents.bundles.get(bsn);
+                    if (bundle == null) {
+                        bundle = new RepositoryBundle(repo, bsn);
+                        repoContents.bundles.put(bsn, bundle);
+                    }
+                    result.add(bundle);
+                }
+                return completeRepositoryBundles(repo, result.toArray());
             }
+            if (!repoContents.pendingLists.add(query))
+                return createLoading(repo);
+        }
+
+        getLoader().execute(new Runnable() {
+            public void run() {
+                List<String> bsns = listRepositoryBundles(repo, query);
+                if (bsns == null)
+                    bsns = Collections.emptyList();
+                synchronized (contents) {
+                    // Discard the result if the repository was invalidated in the meantime
+                    if (contents.get(repo) != repoContents)
+                        return;
+                    repoContents.pendingLists.remove(query);
+                    repoContents.bundleLists.put(query, bsns);
+                }
+                refreshLater(repo);
+            }
+        });
+        return createLoading(repo);
+    }
+
+    private Object[] getDeferredRepositoryBundleVersions(final RepositoryBundle bundle) {
+        final RepositoryPlugin repo = bundle.getRepo();
+        final String bsn = bundle.getBsn();
+
+        final RepositoryContents repoContents;
+        synchronized (contents) {
+            repoContents = getContents(repo);
+            Object[] versions = repoContents.versions.get(bsn);
+            if (versions != null)
+                return versions;
+            if (!repoContents.pendingVersions.add(bsn))
+                return createLoading(bundle);
+        }
+
+        getLoader().execute(new Runnable() {
+            public void run() {
+                Object[] versions = getRepositoryBundleVersions(bundle);
+                if (versions == null)
+                    versions = new Object[0];
+                synchronized (contents) {
+                    if (contents.get(repo) != repoContents)
+                        return;
+                    repoContents.pendingVersions.remove(bsn);
+                    repoContents.versions.put(bsn, versions);
+                }
+                refreshLater(bundle);
+            }
+        });
+        return createLoading(bundle);
+    }
+
+    private Set<String> getCapabilityMatches(String pattern) {
+        synchronized (contents) {
+            if (pattern.equals(capabilityFilter))
+                return capabilityMatches;
+        }
+
+        Set<String> matches = new HashSet<String>();
+        for (Hit hit : Central.getCapabilitySearchIndex().search(pattern, -1))
+            matches.add(hit.getRepository() + "\n" + hit.getBsn());
+
+        synchronized (contents) {
+            capabilityFilter = pattern;
+            capabilityMatches = matches;
+        }
+        return matches;
+    }
+
+    private RepositoryContents getContents(RepositoryPlugin repo) {
+        RepositoryContents repoContents = contents.get(repo);
+        if (repoContents == null) {
+            repoContents = new RepositoryContents();
+            contents.put(repo, repoContents);
+        }
+        return repoContents;
+    }
+
+    private static Object[] createLoading(Object parent) {
+        return new Object[] {
+            new LoadingContentElement(parent)
+        };
+    }
+
+    /**
+     * Refresh an element, or the whole tree if the element is null, on the UI thread.
+     */
+    private void refreshLater(final Object element) {
+        final TreeViewer target = viewer;
+        if (target == null)
+            return;
+        SWTConcurrencyUtil.execForControl(target.getControl(), true, new Runnable() {
+            public void run() {
+                if (target.getControl().isDisposed())
+                    return;
+                if (element != null)
+                    target.refresh(element);
+                else
+                    target.refresh();
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getLoader() {
+        if (loader == null)
+            loader = Executors.newFixedThreadPool(LOADER_THREADS, new LoaderThreadFactory());
+        return loader;
+    }
+
+    private static class RepositoryContents {
+        // Sorted BSN lists keyed by the query pattern; the complete list is stored under the null key
+        final Map<String,List<String>> bundleLists = new HashMap<String,List<String>>();
+        final Map<String,RepositoryBundle> bundles = new HashMap<String,RepositoryBundle>();
+        final Map<String,Object[]> versions = new HashMap<String,Object[]>();
+        final Set<String> pendingLists = new HashSet<String>();
+        final Set<String> pendingVersions = new HashSet<String>();
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Repository Tree Loader " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
-        return result;
     }
 }
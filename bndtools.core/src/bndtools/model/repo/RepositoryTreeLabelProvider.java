@@ -101,6 +101,10 @@ public class RepositoryTreeLabelProvider extends StyledCellLabelProvider impleme
             StyledString label = new StyledString("Continue Search on JPM4J.org...", new HyperlinkStyler());
             cell.setText(label.getString());
             cell.setStyleRanges(label.getStyleRanges());
+        } else if (element instanceof LoadingContentElement) {
+            StyledString label = new StyledString(element.toString(), StyledString.QUALIFIER_STYLER);
+            cell.setText(label.getString());
+            cell.setStyleRanges(label.getStyleRanges());
         } else if (element != null) {
             // Catch-all
             cell.setText(element.toString());
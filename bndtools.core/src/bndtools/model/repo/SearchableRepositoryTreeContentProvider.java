@@ -6,8 +6,7 @@ import aQute.bnd.service.repository.SearchableRepository;
 public class SearchableRepositoryTreeContentProvider extends RepositoryTreeContentProvider {
 
     @Override
-    Object[] getRepositoryBundles(RepositoryPlugin repo) {
-        Object[] bundles = super.getRepositoryBundles(repo);
+    Object[] completeRepositoryBundles(RepositoryPlugin repo, Object[] bundles) {
         Object[] result = bundles;
 
         if (repo instanceof SearchableRepository) {
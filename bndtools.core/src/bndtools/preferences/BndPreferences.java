@@ -17,6 +17,9 @@ public class BndPreferences {
     private static final String PREF_EDITOR_OPEN_SOURCE_TAB = "editorOpenSourceTab";
     private static final String PREF_VCS_CREATE_IGNORE_FILES = "vcsCreateIgnoreFiles";
     private static final String PREF_VCS_VCS = "vcsVcs";
+    private static final String PREF_COMPACT_WORKSPACE_INDEX = "compactWorkspaceIndex";
+    private static final String PREF_RESOLVE_LOG_TO_FILE = "resolveLogToFile";
+    private static final String PREF_RESOLVE_TIME_BUDGET = "resolveTimeBudget";
 
     private final IPreferenceStore store;
 
@@ -112,4 +115,31 @@ public class BndPreferences {
     public int getVcsVcs() {
         return store.getInt(PREF_VCS_VCS);
     }
+
+    public void setCompactWorkspaceIndex(boolean compactWorkspaceIndex) {
+        store.setValue(PREF_COMPACT_WORKSPACE_INDEX, compactWorkspaceIndex);
+    }
+
+    public boolean getCompactWorkspaceIndex() {
+        return store.getBoolean(PREF_COMPACT_WORKSPACE_INDEX);
+    }
+
+    public void setResolveLogToFile(boolean resolveLogToFile) {
+        store.setValue(PREF_RESOLVE_LOG_TO_FILE, resolveLogToFile);
+    }
+
+    public boolean getResolveLogToFile() {
+        return store.getBoolean(PREF_RESOLVE_LOG_TO_FILE);
+    }
+
+    public void setResolveTimeBudget(int seconds) {
+        store.setValue(PREF_RESOLVE_TIME_BUDGET, seconds);
+    }
+
+    /**
+     * The maximum time in seconds that a resolve may take, or 0 for no limit.
+     */
+    public int getResolveTimeBudget() {
+        return store.getInt(PREF_RESOLVE_TIME_BUDGET);
+    }
 }
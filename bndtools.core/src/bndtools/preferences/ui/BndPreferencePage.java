@@ -6,6 +6,8 @@ import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.MessageDialogWithToggle;
 import org.eclipse.jface.preference.PreferencePage;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridData;
@@ -16,6 +18,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Group;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -40,6 +43,9 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
     private boolean editorOpenSourceTab = false;
     private boolean vcsCreateIgnoreFiles = true;
     private int vcsVcs = VersionControlSystem.GIT.ordinal();
+    private boolean compactWorkspaceIndex = false;
+    private boolean resolveLogToFile = false;
+    private int resolveTimeBudget = 0;
 
     @Override
     protected Control createContents(Composite parent) {
@@ -89,6 +95,9 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
                 Messages.BndPreferencePage_cmbBuildLogging_None, Messages.BndPreferencePage_cmbBuildLogging_Basic, Messages.BndPreferencePage_cmbBuildLogging_Full
         });
 
+        final Button btnResolveLogToFile = new Button(grpDebugging, SWT.CHECK);
+        btnResolveLogToFile.setText(Messages.BndPreferencePage_btnResolveLogToFile_text);
+
         Group editorGroup = new Group(composite, SWT.NONE);
         editorGroup.setText(Messages.BndPreferencePage_editorGroup);
 
@@ -109,6 +118,21 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         }
         cmbVcs.setItems(vcsNames);
 
+        Group resolutionGroup = new Group(composite, SWT.NONE);
+        resolutionGroup.setText(Messages.BndPreferencePage_resolutionGroup_text);
+
+        Label lblResolveTimeBudget = new Label(resolutionGroup, SWT.NONE);
+        lblResolveTimeBudget.setText(Messages.BndPreferencePage_lblResolveTimeBudget_text);
+
+        final Spinner spnResolveTimeBudget = new Spinner(resolutionGroup, SWT.BORDER);
+        spnResolveTimeBudget.setValues(0, 0, 86400, 0, 10, 60);
+
+        Group workspaceRepoGroup = new Group(composite, SWT.NONE);
+        workspaceRepoGroup.setText(Messages.BndPreferencePage_workspaceRepoGroup_text);
+
+        final Button btnCompactWorkspaceIndex = new Button(workspaceRepoGroup, SWT.CHECK);
+        btnCompactWorkspaceIndex.setText(Messages.BndPreferencePage_btnCompactWorkspaceIndex_text);
+
         // Load Data
         if (MessageDialogWithToggle.ALWAYS.equals(enableSubs)) {
             btnAlways.setSelection(true);
@@ -128,9 +152,12 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         btnCheckCnfNow.setEnabled(!noCheckCnf);
         btnWarnExistingLaunch.setSelection(warnExistingLaunch);
         cmbBuildLogging.select(buildLogging);
+        btnResolveLogToFile.setSelection(resolveLogToFile);
         btnEditorOpenSourceTab.setSelection(editorOpenSourceTab);
         btnVcsCreateIgnoreFiles.setSelection(vcsCreateIgnoreFiles);
         cmbVcs.select(vcsVcs);
+        btnCompactWorkspaceIndex.setSelection(compactWorkspaceIndex);
+        spnResolveTimeBudget.setSelection(resolveTimeBudget);
 
         // Listeners
         SelectionAdapter adapter = new SelectionAdapter() {
@@ -185,6 +212,12 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
                 buildLogging = cmbBuildLogging.getSelectionIndex();
             }
         });
+        btnResolveLogToFile.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                resolveLogToFile = btnResolveLogToFile.getSelection();
+            }
+        });
         btnEditorOpenSourceTab.addSelectionListener(new SelectionAdapter() {
             @Override
             public void widgetSelected(SelectionEvent e) {
@@ -203,6 +236,17 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
                 vcsVcs = cmbVcs.getSelectionIndex();
             }
         });
+        spnResolveTimeBudget.addModifyListener(new ModifyListener() {
+            public void modifyText(ModifyEvent e) {
+                resolveTimeBudget = spnResolveTimeBudget.getSelection();
+            }
+        });
+        btnCompactWorkspaceIndex.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                compactWorkspaceIndex = btnCompactWorkspaceIndex.getSelection();
+            }
+        });
 
         // Layout
         GridLayout layout;
@@ -236,6 +280,7 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         grpDebugging.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
         grpDebugging.setLayout(new GridLayout(2, false));
         cmbBuildLogging.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+        btnResolveLogToFile.setLayoutData(new GridData(SWT.LEFT, SWT.CENTER, false, false, 2, 1));
 
         gd = new GridData(SWT.FILL, SWT.FILL, true, false);
         editorGroup.setLayoutData(gd);
@@ -247,6 +292,12 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         vcsGroup.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
         vcsGroup.setLayout(new GridLayout(2, false));
         cmbVcs.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
+        resolutionGroup.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
+        resolutionGroup.setLayout(new GridLayout(2, false));
+
+        workspaceRepoGroup.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false));
+        workspaceRepoGroup.setLayout(new GridLayout(1, false));
         return composite;
     }
 
@@ -258,9 +309,12 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         prefs.setHideInitCnfWizard(noCheckCnf);
         prefs.setWarnExistingLaunch(warnExistingLaunch);
         prefs.setBuildLogging(buildLogging);
+        prefs.setResolveLogToFile(resolveLogToFile);
+        prefs.setResolveTimeBudget(resolveTimeBudget);
         prefs.setEditorOpenSourceTab(editorOpenSourceTab);
         prefs.setVcsCreateIgnoreFiles(vcsCreateIgnoreFiles);
         prefs.setVcsVcs(vcsVcs);
+        prefs.setCompactWorkspaceIndex(compactWorkspaceIndex);
 
         return true;
     }
@@ -273,8 +327,11 @@ public class BndPreferencePage extends PreferencePage implements IWorkbenchPrefe
         noCheckCnf = prefs.getHideInitCnfWizard();
         warnExistingLaunch = prefs.getWarnExistingLaunches();
         buildLogging = prefs.getBuildLogging();
+        resolveLogToFile = prefs.getResolveLogToFile();
+        resolveTimeBudget = prefs.getResolveTimeBudget();
         editorOpenSourceTab = prefs.getEditorOpenSourceTab();
         vcsCreateIgnoreFiles = prefs.getVcsCreateIgnoreFiles();
         vcsVcs = prefs.getVcsVcs();
+        compactWorkspaceIndex = prefs.getCompactWorkspaceIndex();
     }
 }
\ No newline at end of file
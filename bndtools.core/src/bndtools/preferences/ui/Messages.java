@@ -22,10 +22,15 @@ public class Messages extends NLS {
     public static String BndPreferencePage_titleSubBundles;
     public static String BndPreferencePage_grpDebugging_text;
     public static String BndPreferencePage_lblBuildLogging_text;
+    public static String BndPreferencePage_btnResolveLogToFile_text;
     public static String BndPreferencePage_grpLaunching_text;
     public static String BndPreferencePage_btnWarnExistingLaunch;
     public static String BndPreferencePage_vcsGroup_text;
     public static String BndPreferencePage_btnVcsCreateIgnoreFiles_text;
+    public static String BndPreferencePage_workspaceRepoGroup_text;
+    public static String BndPreferencePage_btnCompactWorkspaceIndex_text;
+    public static String BndPreferencePage_resolutionGroup_text;
+    public static String BndPreferencePage_lblResolveTimeBudget_text;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
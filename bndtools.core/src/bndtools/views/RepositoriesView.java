@@ -6,6 +6,7 @@ import java.io.File;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.net.URL;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -26,6 +27,8 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.action.GroupMarker;
 import org.eclipse.jface.action.IMenuListener;
@@ -43,6 +46,7 @@ import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.ViewerDropAdapter;
+import org.eclipse.jface.window.Window;
 import org.eclipse.jface.wizard.WizardDialog;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.dnd.DND;
@@ -75,18 +79,19 @@ import aQute.bnd.service.Actionable;
 import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.lib.converter.Converter;
-import aQute.lib.io.IO;
 import bndtools.Activator;
 import bndtools.Plugin;
 import bndtools.central.Central;
 import bndtools.central.RepositoryUtils;
 import bndtools.model.repo.ContinueSearchElement;
+import bndtools.model.repo.LazyRepositoryTreeContentProvider;
 import bndtools.model.repo.RepositoryBundle;
 import bndtools.model.repo.RepositoryBundleVersion;
 import bndtools.model.repo.RepositoryTreeLabelProvider;
 import bndtools.model.repo.SearchableRepositoryTreeContentProvider;
 import bndtools.utils.SelectionDragAdapter;
 import bndtools.wizards.workspace.AddFilesToRepositoryWizard;
+import bndtools.wizards.workspace.DownloadFileJob;
 
 public class RepositoriesView extends ViewPart implements RepositoryListenerPlugin {
     final static Pattern LABEL_PATTERN = Pattern.compile("(-)?(!)?([^{}]+)(?:\\{([^}]+)\\})?");
@@ -97,6 +102,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
     private final FilterPanelPart filterPart = new FilterPanelPart(Plugin.getDefault().getScheduler());
     private final SearchableRepositoryTreeContentProvider contentProvider = new SearchableRepositoryTreeContentProvider();
     private TreeViewer viewer;
+    private LazyRepositoryTreeContentProvider lazyContentProvider;
 
     private Action collapseAllAction;
     private Action refreshAction;
@@ -109,11 +115,16 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         // CREATE CONTROLS
         Composite mainPanel = new Composite(parent, SWT.NONE);
         Control filterPanel = filterPart.createControl(mainPanel, 5, 5);
-        Tree tree = new Tree(mainPanel, SWT.FULL_SELECTION | SWT.MULTI);
+        Tree tree = new Tree(mainPanel, SWT.FULL_SELECTION | SWT.MULTI | SWT.VIRTUAL);
         filterPanel.setBackground(tree.getBackground());
 
         viewer = new TreeViewer(tree);
-        viewer.setContentProvider(contentProvider);
+        viewer.setUseHashlookup(true);
+        // Query repositories in the background, remote repositories may be slow. Only create items for visible rows,
+        // repositories may contain tens of thousands of bundles.
+        contentProvider.setDeferred(true);
+        lazyContentProvider = new LazyRepositoryTreeContentProvider(contentProvider);
+        viewer.setContentProvider(lazyContentProvider);
         ColumnViewerToolTipSupport.enableFor(viewer);
 
         viewer.setLabelProvider(new RepositoryTreeLabelProvider(false));
@@ -180,6 +191,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
             @Override
             public boolean performDrop(Object data) {
                 if (RepositoriesView.this.performDrop(getCurrentTarget(), getCurrentEvent().currentDataType)) {
+                    invalidate(getCurrentTarget());
                     viewer.refresh(getCurrentTarget(), true);
                     return true;
                 }
@@ -188,11 +200,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
                 if (URLTransfer.getInstance().isSupportedType(getCurrentEvent().currentDataType)) {
                     try {
                         URL url = new URL((String) URLTransfer.getInstance().nativeToJava(getCurrentEvent().currentDataType));
-                        File tmp = File.createTempFile("dwnl", ".jar");
-                        IO.copy(url, tmp);
-                        copied = addFilesToRepository((RepositoryPlugin) getCurrentTarget(), new File[] {
-                            tmp
-                        });
+                        copied = downloadToRepository((RepositoryPlugin) getCurrentTarget(), url);
                     } catch (Exception e) {
                         return false;
                     }
@@ -355,10 +363,67 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
     }
 
     boolean addFilesToRepository(RepositoryPlugin repo, File[] files) {
+        addFilesToRepository(repo, files, null);
+        return true;
+    }
+
+    /**
+     * Open the add wizard for the files. The {@code completion}, if not null, is run once the files have been added or
+     * the wizard has been cancelled, e.g. to delete temporary files.
+     */
+    private void addFilesToRepository(final RepositoryPlugin repo, File[] files, final Runnable completion) {
         AddFilesToRepositoryWizard wizard = new AddFilesToRepositoryWizard(repo, files);
+        wizard.setRunInBackground(true);
+        // The files are added in the background, refresh the repository once they all have been
+        wizard.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
+                    public void run() {
+                        contentProvider.invalidate(repo);
+                        viewer.refresh(repo);
+                    }
+                });
+                if (completion != null)
+                    completion.run();
+            }
+        });
         WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
-        dialog.open();
-        viewer.refresh(repo);
+        if (dialog.open() != Window.OK && completion != null)
+            completion.run();
+    }
+
+    /**
+     * Download the URL in the background and open the add wizard once the download has completed. Each drop gets its
+     * own job, so several downloads can be in progress at once.
+     */
+    boolean downloadToRepository(final RepositoryPlugin repo, URL url) {
+        final DownloadFileJob job = new DownloadFileJob(url);
+        job.setUser(true);
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                final File file = job.getFile();
+                if (!event.getResult().isOK() || file == null)
+                    return;
+                // In case the view is closed before the wizard opens
+                file.deleteOnExit();
+                logger.logInfo(MessageFormat.format("Downloaded {0} (SHA-1 {1})", job.getURL(), job.getSHA1()), null);
+
+                SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
+                    public void run() {
+                        addFilesToRepository(repo, new File[] {
+                            file
+                        }, new Runnable() {
+                            public void run() {
+                                file.delete();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        job.schedule();
         return true;
     }
 
@@ -372,7 +437,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         contentProvider.setFilter(newFilter);
         viewer.refresh();
         if (newFilter != null)
-            viewer.expandToLevel(2);
+            lazyContentProvider.expandToLevel(2);
     }
 
     void createActions() {
@@ -404,11 +469,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
                 if (element != null && element instanceof RepositoryPlugin) {
                     RepositoryPlugin repo = (RepositoryPlugin) element;
                     if (repo.canWrite()) {
-                        AddFilesToRepositoryWizard wizard = new AddFilesToRepositoryWizard(repo, new File[0]);
-                        WizardDialog dialog = new WizardDialog(getViewSite().getShell(), wizard);
-                        dialog.open();
-
-                        viewer.refresh(repo);
+                        addFilesToRepository(repo, new File[0]);
                     }
                 }
             }
@@ -468,6 +529,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
                                             } catch (Exception e) {
                                                 throw new RuntimeException(e);
                                             }
+                                            invalidate(act);
                                             viewer.refresh(act);
                                         }
                                     };
@@ -505,11 +567,21 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         // was expanded before the reload.
         for (RepositoryPlugin repo : repos) {
             if (expandedRepoNames.contains(repo.getName())) {
-                viewer.setExpandedState(repo, true);
+                lazyContentProvider.expand(repo);
             }
         }
     }
 
+    /**
+     * Discard the cached contents of the repository that an element belongs to, before refreshing the element.
+     */
+    private void invalidate(Object element) {
+        if (element instanceof RepositoryPlugin)
+            contentProvider.invalidate((RepositoryPlugin) element);
+        else if (element instanceof RepositoryBundle)
+            contentProvider.invalidate(((RepositoryBundle) element).getRepo());
+    }
+
     private void fillToolBar(IToolBarManager toolBar) {
         toolBar.add(refreshAction);
         toolBar.add(collapseAllAction);
@@ -521,6 +593,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         if (viewer != null)
             SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
                 public void run() {
+                    contentProvider.invalidate(repository);
                     viewer.refresh(repository);
                 }
             });
@@ -530,6 +603,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         if (viewer != null)
             SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
                 public void run() {
+                    contentProvider.invalidate(repository);
                     viewer.refresh(repository);
                 }
             });
@@ -539,6 +613,7 @@ public class RepositoriesView extends ViewPart implements RepositoryListenerPlug
         if (viewer != null)
             SWTConcurrencyUtil.execForControl(viewer.getControl(), true, new Runnable() {
                 public void run() {
+                    contentProvider.invalidate(repository);
                     viewer.refresh(repository);
                 }
             });
@@ -4,13 +4,16 @@ import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.bndtools.api.ILogger;
 import org.bndtools.api.Logger;
+import org.bndtools.utils.swt.SWTConcurrencyUtil;
 import org.eclipse.jface.viewers.IOpenListener;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
@@ -43,6 +46,7 @@ import org.eclipse.swt.widgets.Tree;
 import aQute.bnd.build.model.clauses.VersionedClause;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.osgi.Constants;
+import bndtools.central.CapabilitySearchIndex.Hit;
 import bndtools.central.Central;
 import bndtools.central.RepositoryUtils;
 import bndtools.model.clauses.VersionedClauseLabelProvider;
@@ -70,6 +74,22 @@ public class RepoBundleSelectionWizardPage extends WizardPage {
     Button addButton;
     Button removeButton;
 
+    // Bundles providing a capability that matches the search text
+    private String capabilitySearch = null;
+    private Set<String> capabilityBsns = null;
+
+    private final Runnable capabilityIndexListener = new Runnable() {
+        public void run() {
+            SWTConcurrencyUtil.execForControl(availableViewer.getControl(), true, new Runnable() {
+                public void run() {
+                    capabilitySearch = null;
+                    if (!availableViewer.getControl().isDisposed() && selectionSearchTxt.getText().length() > 0)
+                        availableViewer.refresh();
+                }
+            });
+        }
+    };
+
     ViewerFilter alreadySelectedFilter = new ViewerFilter() {
         @Override
         public boolean select(Viewer viewer, Object parentElement, Object element) {
@@ -83,7 +103,7 @@ public class RepoBundleSelectionWizardPage extends WizardPage {
             }
 
             if (bsn != null) {
-                if (search.length() > 0 && bsn.toLowerCase().indexOf(search) == -1) {
+                if (search.length() > 0 && bsn.toLowerCase().indexOf(search) == -1 && !getCapabilityBsns(search).contains(bsn)) {
                     return false;
                 }
                 return !selectedBundles.containsKey(bsn);
@@ -107,11 +127,22 @@ public class RepoBundleSelectionWizardPage extends WizardPage {
         return new ArrayList<VersionedClause>(selectedBundles.values());
     }
 
+    Set<String> getCapabilityBsns(String search) {
+        if (!search.equals(capabilitySearch)) {
+            Set<String> bsns = new HashSet<String>();
+            for (Hit hit : Central.getCapabilitySearchIndex().search(search, -1))
+                bsns.add(hit.getBsn());
+            capabilitySearch = search;
+            capabilityBsns = bsns;
+        }
+        return capabilityBsns;
+    }
+
     Control createAvailableBundlesPanel(Composite parent) {
         Composite panel = new Composite(parent, SWT.NONE);
         new Label(panel, SWT.NONE).setText("Available Bundles:");
         selectionSearchTxt = new Text(panel, SWT.BORDER | SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
-        selectionSearchTxt.setMessage("filter bundle name");
+        selectionSearchTxt.setMessage("filter bundle name or package");
 
         final Tree availableTree = new Tree(panel, SWT.FULL_SELECTION | SWT.MULTI | SWT.BORDER);
         availableViewer = new TreeViewer(availableTree);
@@ -123,6 +154,9 @@ public class RepoBundleSelectionWizardPage extends WizardPage {
             alreadySelectedFilter
         });
 
+        Central.getCapabilitySearchIndex().addListener(capabilityIndexListener);
+        Central.getCapabilitySearchIndex().refresh();
+
         // Load data
         try {
             refreshBundleList();
@@ -280,6 +314,12 @@ public class RepoBundleSelectionWizardPage extends WizardPage {
         availableViewer.setInput(RepositoryUtils.listRepositories(true));
     }
 
+    @Override
+    public void dispose() {
+        Central.getCapabilitySearchIndex().removeListener(capabilityIndexListener);
+        super.dispose();
+    }
+
     void doAdd() {
         IStructuredSelection selection = (IStructuredSelection) availableViewer.getSelection();
         List<VersionedClause> adding = new ArrayList<VersionedClause>(selection.size());
@@ -0,0 +1,225 @@
+package bndtools.wizards.workspace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
+import org.bndtools.utils.osgi.BundleUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.CoordinationException;
+
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+import aQute.lib.io.IO;
+import bndtools.Plugin;
+import bndtools.central.Central;
+import bndtools.central.RefreshFileJob;
+import bndtools.types.Pair;
+
+/**
+ * Adds a number of bundle files to a repository. The manifests of the files are analysed in parallel, a bounded
+ * number of files ahead of the file currently being put, while the puts themselves are performed one at a time in the
+ * order of the files. The puts are made within a coordination, so that repositories taking part update their index
+ * once. Once all files have been added the repository directory is refreshed once and the repository listeners are
+ * notified.
+ */
+public class AddFilesToRepositoryJob extends Job {
+
+    private static final ILogger logger = Logger.getLogger(AddFilesToRepositoryJob.class);
+
+    private final RepositoryPlugin repository;
+    private final List<File> files;
+    private final List<Pair<String,String>> addedBundles = Collections.synchronizedList(new LinkedList<Pair<String,String>>());
+
+    public AddFilesToRepositoryJob(RepositoryPlugin repository, List<File> files) {
+        super(MessageFormat.format("Adding files to repository {0}", repository.getName()));
+        this.repository = repository;
+        this.files = new ArrayList<File>(files);
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        return addFiles(monitor);
+    }
+
+    /**
+     * Add the files on the calling thread, e.g. from a wizard container. Returns a status with the failures, if any,
+     * or {@link Status#CANCEL_STATUS} if the monitor was cancelled.
+     */
+    public IStatus addFiles(IProgressMonitor monitor) {
+        MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Failed to install one or more bundles", null);
+        monitor.beginTask(getName(), files.size() * 2);
+
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+        int window = threads * 2;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new AnalyserThreadFactory());
+        List<File> added = new ArrayList<File>(files.size());
+
+        // Let the repository update its index (and commit) once for all files
+        Coordination coordination = Central.getCoordinator().begin(AddFilesToRepositoryJob.class.getName(), 0);
+        try {
+            // Keep a bounded number of analyses ahead of the puts
+            List<Future<Pair<String,String>>> analyses = new ArrayList<Future<Pair<String,String>>>(files.size());
+            int submitted = 0;
+            for (; submitted < Math.min(window, files.size()); submitted++)
+                analyses.add(executor.submit(new Analyser(files.get(submitted))));
+
+            for (int i = 0; i < files.size(); i++) {
+                if (monitor.isCanceled())
+                    return Status.CANCEL_STATUS;
+
+                File file = files.get(i);
+                monitor.subTask(file.getName());
+
+                Pair<String,String> bundle;
+                try {
+                    bundle = analyses.get(i).get();
+                } catch (ExecutionException e) {
+                    status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse JAR: {0}", file.getPath()), e.getCause()));
+                    bundle = null;
+                } finally {
+                    analyses.set(i, null);
+                    if (submitted < files.size())
+                        analyses.add(executor.submit(new Analyser(files.get(submitted++))));
+                }
+                monitor.worked(1);
+
+                if (bundle != null && put(file, status, added))
+                    addedBundles.add(bundle);
+                monitor.worked(1);
+            }
+        } catch (InterruptedException e) {
+            return Status.CANCEL_STATUS;
+        } finally {
+            executor.shutdownNow();
+            try {
+                coordination.end();
+            } catch (CoordinationException e) {
+                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to update repository {0}", repository.getName()), e.getCause()));
+            }
+            refresh(added);
+            monitor.done();
+        }
+
+        return status.isOK() ? Status.OK_STATUS : status;
+    }
+
+    /**
+     * Returns the BSN and version of each bundle that was added.
+     */
+    public List<Pair<String,String>> getAddedBundles() {
+        synchronized (addedBundles) {
+            return new ArrayList<Pair<String,String>>(addedBundles);
+        }
+    }
+
+    private boolean put(File file, MultiStatus status, List<File> added) {
+        InputStream stream = null;
+        try {
+            stream = new BufferedInputStream(new FileInputStream(file));
+            RepositoryPlugin.PutResult result = repository.put(stream, new RepositoryPlugin.PutOptions());
+            if (result.artifact != null && result.artifact.getScheme().equals("file"))
+                added.add(new File(result.artifact));
+            return true;
+        } catch (Exception e) {
+            status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to add JAR to repository: {0}", file.getPath()), e));
+            return false;
+        } finally {
+            IO.close(stream);
+        }
+    }
+
+    private void refresh(List<File> added) {
+        if (added.isEmpty())
+            return;
+
+        // Refresh the common parent of the added files once, rather than each file
+        File dir = added.get(0).getParentFile();
+        for (File file : added) {
+            while (dir != null && !isAncestor(dir, file))
+                dir = dir.getParentFile();
+        }
+        try {
+            if (dir != null) {
+                RefreshFileJob refreshJob = new RefreshFileJob(dir, false);
+                if (refreshJob.needsToSchedule())
+                    refreshJob.schedule();
+            }
+        } catch (Exception e) {
+            logger.logError(MessageFormat.format("Error refreshing directory {0}", dir), e);
+        }
+
+        try {
+            for (RepositoryListenerPlugin listener : Central.getWorkspace().getPlugins(RepositoryListenerPlugin.class))
+                listener.repositoryRefreshed(repository);
+        } catch (Exception e) {
+            logger.logError("Error notifying repository listeners", e);
+        }
+    }
+
+    private static boolean isAncestor(File dir, File file) {
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(dir))
+                return true;
+        }
+        return false;
+    }
+
+    private static class Analyser implements Callable<Pair<String,String>> {
+        private final File file;
+
+        Analyser(File file) {
+            this.file = file;
+        }
+
+        public Pair<String,String> call() throws Exception {
+            Jar jar = new Jar(file);
+            try {
+                jar.setDoNotTouchManifest();
+
+                Attributes mainAttribs = jar.getManifest().getMainAttributes();
+                String bsn = BundleUtils.getBundleSymbolicName(mainAttribs);
+                String version = mainAttribs.getValue(Constants.BUNDLE_VERSION);
+                if (version == null)
+                    version = "0";
+                return Pair.newInstance(bsn, version);
+            } finally {
+                jar.close();
+            }
+        }
+    }
+
+    private static class AnalyserThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Bundle Analyser " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -2,27 +2,22 @@ package bndtools.wizards.workspace;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.text.MessageFormat;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.jar.Attributes;
 
-import org.bndtools.utils.osgi.BundleUtils;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeListener;
 import org.eclipse.jface.dialogs.ErrorDialog;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.wizard.Wizard;
 
-import aQute.bnd.osgi.Constants;
-import aQute.bnd.osgi.Jar;
 import aQute.bnd.service.RepositoryPlugin;
 import bndtools.Plugin;
-import bndtools.central.RefreshFileJob;
 import bndtools.types.Pair;
 
 public class AddFilesToRepositoryWizard extends Wizard {
@@ -30,6 +25,8 @@ public class AddFilesToRepositoryWizard extends Wizard {
     private RepositoryPlugin repository;
     private final File[] files;
     private List<Pair<String,String>> selectedBundles;
+    private boolean runInBackground = false;
+    private final List<IJobChangeListener> jobListeners = new LinkedList<IJobChangeListener>();
 
     private final LocalRepositorySelectionPage repoSelectionPage;
     private final AddFilesToRepositoryWizardPage fileSelectionPage;
@@ -42,6 +39,8 @@ public class AddFilesToRepositoryWizard extends Wizard {
 
         fileSelectionPage = new AddFilesToRepositoryWizardPage("fileSelectionPage");
         fileSelectionPage.setFiles(files);
+
+        setNeedsProgressMonitor(true);
     }
 
     @Override
@@ -57,52 +56,53 @@ public class AddFilesToRepositoryWizard extends Wizard {
         addPage(fileSelectionPage);
     }
 
+    /**
+     * If set, finishing the wizard schedules the import as a background job and returns immediately, so
+     * {@link #getSelectedBundles()} is empty. Otherwise the import runs in the wizard's progress area.
+     */
+    public void setRunInBackground(boolean runInBackground) {
+        this.runInBackground = runInBackground;
+    }
+
+    /**
+     * Add a listener to the background import job, e.g. to refresh a view once the import has completed.
+     */
+    public void addJobChangeListener(IJobChangeListener listener) {
+        jobListeners.add(listener);
+    }
+
     @Override
     public boolean performFinish() {
-        MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, "Failed to install one or more bundles", null);
-
-        List<File> files = fileSelectionPage.getFiles();
+        final AddFilesToRepositoryJob job = new AddFilesToRepositoryJob(repository, fileSelectionPage.getFiles());
         selectedBundles = new LinkedList<Pair<String,String>>();
-        for (File file : files) {
-            Jar jar = null;
-            try {
-                jar = new Jar(file);
-                jar.setDoNotTouchManifest();
-
-                Attributes mainAttribs = jar.getManifest().getMainAttributes();
-                String bsn = BundleUtils.getBundleSymbolicName(mainAttribs);
-                String version = mainAttribs.getValue(Constants.BUNDLE_VERSION);
-                if (version == null)
-                    version = "0";
-                selectedBundles.add(Pair.newInstance(bsn, version));
-            } catch (Exception e) {
-                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to analyse JAR: {0}", file.getPath()), e));
-                continue;
-            } finally {
-                if (jar != null)
-                    jar.close();
-            }
-
-            try {
-                RepositoryPlugin.PutResult result = repository.put(new BufferedInputStream(new FileInputStream(file)), new RepositoryPlugin.PutOptions());
-                if (result.artifact != null && result.artifact.getScheme().equals("file")) {
-                    File newFile = new File(result.artifact);
-
-                    RefreshFileJob refreshJob = new RefreshFileJob(newFile, false);
-                    if (refreshJob.needsToSchedule())
-                        refreshJob.schedule();
-                }
-            } catch (Exception e) {
-                status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to add JAR to repository: {0}", file.getPath()), e));
-                continue;
-            }
 
+        if (runInBackground) {
+            job.setUser(true);
+            for (IJobChangeListener listener : jobListeners)
+                job.addJobChangeListener(listener);
+            job.schedule();
+            return true;
+        }
+
+        final IStatus[] status = new IStatus[1];
+        try {
+            getContainer().run(true, true, new IRunnableWithProgress() {
+                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+                    status[0] = job.addFiles(monitor);
+                }
+            });
+        } catch (InvocationTargetException e) {
+            status[0] = new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Failed to install one or more bundles", e.getTargetException());
+        } catch (InterruptedException e) {
+            status[0] = Status.CANCEL_STATUS;
         }
+        selectedBundles.addAll(job.getAddedBundles());
 
-        if (status.isOK()) {
+        // Bundles added before a cancellation remain in the repository
+        if (status[0].isOK() || status[0].getSeverity() == IStatus.CANCEL) {
             return true;
         }
-        ErrorDialog.openError(getShell(), "Error", null, status);
+        ErrorDialog.openError(getShell(), "Error", null, status[0]);
         return false;
     }
 
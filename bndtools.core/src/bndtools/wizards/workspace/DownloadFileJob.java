@@ -0,0 +1,132 @@
+package bndtools.wizards.workspace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.text.MessageFormat;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.Plugin;
+
+/**
+ * Downloads a URL to a temporary file, reporting progress and computing the SHA-1 digest of the content while it is
+ * streamed. Cancelling the job stops the download and deletes the partial file, as does exceeding the maximum size.
+ * Any URL supported by {@link URLConnection} can be used, including {@code file:} URLs.
+ */
+public class DownloadFileJob extends Job {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 60000;
+    private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+    private final URL url;
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private File file = null;
+    private String sha1 = null;
+
+    public DownloadFileJob(URL url) {
+        super(MessageFormat.format("Downloading {0}", url));
+        this.url = url;
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+        File tmp = null;
+        InputStream in = null;
+        OutputStream out = null;
+        boolean complete = false;
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+
+            // Report progress in kilobytes, so that large files do not overflow the int work units
+            int length = connection.getContentLength();
+            if (length > maxSize)
+                return sizeExceeded();
+            monitor.beginTask(getName(), length > 0 ? (length + 1023) / 1024 : IProgressMonitor.UNKNOWN);
+
+            in = connection.getInputStream();
+            tmp = File.createTempFile("dwnl", ".jar");
+            out = new FileOutputStream(tmp);
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int reported = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (monitor.isCanceled())
+                    return Status.CANCEL_STATUS;
+                if (total + read > maxSize)
+                    return sizeExceeded();
+                out.write(buffer, 0, read);
+                digest.update(buffer, 0, read);
+
+                total += read;
+                int kilobytes = (int) (total / 1024);
+                monitor.worked(kilobytes - reported);
+                reported = kilobytes;
+                monitor.subTask(MessageFormat.format("{0} KB", kilobytes));
+            }
+            out.close();
+            out = null;
+
+            file = tmp;
+            sha1 = Hex.toHexString(digest.digest());
+            complete = true;
+            return Status.OK_STATUS;
+        } catch (Exception e) {
+            return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to download {0}", url), e);
+        } finally {
+            IO.close(in);
+            IO.close(out);
+            if (!complete && tmp != null)
+                tmp.delete();
+            monitor.done();
+        }
+    }
+
+    private IStatus sizeExceeded() {
+        return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, MessageFormat.format("Failed to download {0}: larger than the maximum size of {1} bytes", url, maxSize), null);
+    }
+
+    /**
+     * Set the maximum number of bytes to download; a larger download fails. The default is 256 MB.
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public URL getURL() {
+        return url;
+    }
+
+    /**
+     * Returns the downloaded file, or null if the download has not completed successfully. The caller is responsible
+     * for deleting the file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the SHA-1 digest of the downloaded content in hex, or null if the download has not completed successfully.
+     */
+    public String getSHA1() {
+        return sha1;
+    }
+
+}
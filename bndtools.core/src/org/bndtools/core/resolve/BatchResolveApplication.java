@@ -0,0 +1,87 @@
+package org.bndtools.core.resolve;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+
+import aQute.lib.io.IO;
+import bndtools.central.Central;
+
+/**
+ * Headless entry point that resolves all run descriptors of a workspace, for use in continuous integration builds:
+ *
+ * <pre>
+ * eclipse -nosplash -data &lt;workspace&gt; -application bndtools.core.batchResolve [-threads &lt;n&gt;] [-timeout &lt;seconds&gt;] [-report &lt;file&gt;]
+ * </pre>
+ *
+ * The report is printed to standard output and optionally written to a file. The exit code is 0 if every run descriptor
+ * resolved, 1 if any failed to resolve and 2 if the batch could not be run.
+ */
+public class BatchResolveApplication implements IApplication {
+
+    private static final Integer EXIT_UNRESOLVED = Integer.valueOf(1);
+    private static final Integer EXIT_ERROR = Integer.valueOf(2);
+
+    private BatchResolveJob job;
+
+    public Object start(IApplicationContext context) throws Exception {
+        String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+        if (args == null)
+            args = new String[0];
+
+        int threads = BatchResolveJob.getDefaultParallelism();
+        long timeBudgetMillis = -1;
+        File reportFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-timeout".equals(args[i]) && i + 1 < args.length) {
+                timeBudgetMillis = Long.parseLong(args[++i]) * 1000L;
+            } else if ("-report".equals(args[i]) && i + 1 < args.length) {
+                reportFile = new File(args[++i]);
+            }
+        }
+        context.applicationRunning();
+
+        // Initialise the bnd workspace and its repositories
+        Central.getWorkspace();
+
+        synchronized (this) {
+            job = new BatchResolveJob(threads);
+            job.setTimeBudget(timeBudgetMillis);
+        }
+        job.schedule();
+        job.join();
+
+        BatchResolveReport report = job.getReport();
+        if (report == null) {
+            IStatus status = job.getResult();
+            System.err.println(status != null ? status.getMessage() : "Batch resolve did not complete.");
+            if (status != null && status.getException() != null)
+                status.getException().printStackTrace();
+            return EXIT_ERROR;
+        }
+
+        String text = report.format();
+        System.out.println(text);
+        if (reportFile != null) {
+            PrintStream out = new PrintStream(reportFile, "UTF-8");
+            try {
+                out.print(text);
+            } finally {
+                IO.close(out);
+            }
+        }
+
+        return report.isAllResolved() ? EXIT_OK : EXIT_UNRESOLVED;
+    }
+
+    public synchronized void stop() {
+        if (job != null)
+            job.cancel();
+    }
+
+}
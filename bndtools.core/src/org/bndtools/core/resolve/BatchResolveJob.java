@@ -0,0 +1,201 @@
+package org.bndtools.core.resolve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bndtools.core.resolve.BatchResolveReport.Entry;
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import aQute.bnd.build.Project;
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.build.model.clauses.VersionedClause;
+import bndtools.Plugin;
+
+/**
+ * Resolves every run descriptor in the workspace, i.e. each .bndrun file and each bnd.bnd file that has -runrequires,
+ * on a bounded pool of worker threads. Every resolve uses its own resolver, while repository lookups are shared between
+ * all resolves. The files are not modified; the outcome, timing and the differences from the current -runbundles are
+ * collected in a {@link BatchResolveReport}.
+ */
+public class BatchResolveJob extends Job {
+
+    private static final String BNDRUN_EXTENSION = ".bndrun";
+
+    private final int parallelism;
+    private long timeBudgetMillis = -1;
+    private BatchResolveReport report;
+
+    public BatchResolveJob() {
+        this(getDefaultParallelism());
+    }
+
+    public BatchResolveJob(int parallelism) {
+        super(Messages.BatchResolveJob_jobName);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public static int getDefaultParallelism() {
+        // Resolves are memory intensive, so use a modest number of workers
+        return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    }
+
+    @Override
+    protected IStatus run(final IProgressMonitor monitor) {
+        List<IFile> files;
+        try {
+            files = findRunDescriptors();
+        } catch (CoreException e) {
+            return e.getStatus();
+        }
+
+        monitor.beginTask(Messages.BatchResolveJob_jobName, files.size());
+        long start = System.currentTimeMillis();
+
+        ProviderCache providerCache = new ProviderCache();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, files.size())), new WorkerThreadFactory());
+        try {
+            CompletionService<Entry> completion = new ExecutorCompletionService<Entry>(executor);
+            for (IFile file : files)
+                completion.submit(new ResolveTask(file, providerCache, timeBudgetMillis, monitor));
+
+            List<Entry> entries = new ArrayList<Entry>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                Future<Entry> future;
+                do {
+                    if (monitor.isCanceled())
+                        return Status.CANCEL_STATUS;
+                    future = completion.poll(100, TimeUnit.MILLISECONDS);
+                } while (future == null);
+
+                Entry entry = future.get();
+                if (entry != null) {
+                    entries.add(entry);
+                    monitor.subTask(entry.getPath());
+                }
+                monitor.worked(1);
+            }
+
+            report = new BatchResolveReport(entries, System.currentTimeMillis() - start);
+            return Status.OK_STATUS;
+        } catch (InterruptedException e) {
+            return Status.CANCEL_STATUS;
+        } catch (ExecutionException e) {
+            return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, Messages.BatchResolveJob_errorResolving, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            providerCache.dispose();
+            monitor.done();
+        }
+    }
+
+    /**
+     * Limit the time each resolve may take, see {@link ResolveOperation#setTimeBudget(long)}.
+     */
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+    }
+
+    /**
+     * Returns the report, or null if the job has not completed successfully.
+     */
+    public BatchResolveReport getReport() {
+        return report;
+    }
+
+    private static List<IFile> findRunDescriptors() throws CoreException {
+        final List<IFile> files = new ArrayList<IFile>();
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            if (!project.isOpen())
+                continue;
+            project.accept(new IResourceProxyVisitor() {
+                public boolean visit(IResourceProxy proxy) throws CoreException {
+                    if (proxy.isDerived())
+                        return false;
+                    if (proxy.getType() == IResource.FILE && (proxy.getName().endsWith(BNDRUN_EXTENSION) || Project.BNDFILE.equals(proxy.getName())))
+                        files.add((IFile) proxy.requestResource());
+                    return true;
+                }
+            }, 0);
+        }
+        return files;
+    }
+
+    private static class ResolveTask implements Callable<Entry> {
+        private final IFile file;
+        private final ProviderCache providerCache;
+        private final long timeBudgetMillis;
+        private final IProgressMonitor monitor;
+
+        ResolveTask(IFile file, ProviderCache providerCache, long timeBudgetMillis, IProgressMonitor monitor) {
+            this.file = file;
+            this.providerCache = providerCache;
+            this.timeBudgetMillis = timeBudgetMillis;
+            this.monitor = monitor;
+        }
+
+        public Entry call() throws Exception {
+            String path = file.getFullPath().toString();
+
+            BndEditModel model = new BndEditModel();
+            model.loadFrom(file.getLocation().toFile());
+            model.setBndResource(file.getLocation().toFile());
+            model.setBndResourceName(file.getName());
+
+            if (model.getRunRequires() == null || model.getRunRequires().isEmpty())
+                return null;
+
+            IStatus validation = ResolveJob.validate(model);
+            if (!validation.isOK())
+                return new Entry(path, Outcome.Error, 0, validation.getMessage());
+
+            // Only the job's monitor reports progress; the workers just observe cancellation
+            IProgressMonitor workerMonitor = new NullProgressMonitor() {
+                @Override
+                public boolean isCanceled() {
+                    return monitor.isCanceled();
+                }
+            };
+
+            List<VersionedClause> runBundles = model.getRunBundles();
+            long start = System.currentTimeMillis();
+            ResolveOperation operation = new ResolveOperation(model);
+            operation.setProviderCache(providerCache);
+            operation.setTimeBudget(timeBudgetMillis);
+            operation.run(workerMonitor);
+            return BatchResolveReport.createEntry(path, runBundles, operation.getResult(), System.currentTimeMillis() - start);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Batch Resolve Worker " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+package org.bndtools.core.resolve;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.bndtools.utils.resources.ResourceUtils;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.osgi.framework.Version;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.build.model.clauses.VersionedClause;
+import bndtools.Plugin;
+
+/**
+ * The outcome of resolving a number of run descriptors with a {@link BatchResolveJob}. For each descriptor the report
+ * records the outcome, the time taken and how the resolved bundles differ from the current -runbundles.
+ */
+public class BatchResolveReport {
+
+    public static class Entry {
+        private final String path;
+        private final Outcome outcome;
+        private final long timeMillis;
+        private final String message;
+        private final List<String> added = new ArrayList<String>();
+        private final List<String> removed = new ArrayList<String>();
+        private final List<String> changed = new ArrayList<String>();
+
+        Entry(String path, Outcome outcome, long timeMillis, String message) {
+            this.path = path;
+            this.outcome = outcome;
+            this.timeMillis = timeMillis;
+            this.message = message;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        /**
+         * Returns the reason for a failed resolve, or null.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /** Bundles in the resolution that are not in -runbundles. */
+        public List<String> getAdded() {
+            return Collections.unmodifiableList(added);
+        }
+
+        /** Bundles in -runbundles that are not in the resolution. */
+        public List<String> getRemoved() {
+            return Collections.unmodifiableList(removed);
+        }
+
+        /** Bundles whose resolved version does not match -runbundles. */
+        public List<String> getChanged() {
+            return Collections.unmodifiableList(changed);
+        }
+
+        public boolean hasRunBundleChanges() {
+            return !added.isEmpty() || !removed.isEmpty() || !changed.isEmpty();
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long timeMillis;
+
+    BatchResolveReport(List<Entry> entries, long timeMillis) {
+        this.entries = new ArrayList<Entry>(entries);
+        this.timeMillis = timeMillis;
+        Collections.sort(this.entries, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                return e1.getPath().compareTo(e2.getPath());
+            }
+        });
+    }
+
+    static Entry createEntry(String path, List<VersionedClause> runBundles, ResolutionResult result, long timeMillis) {
+        if (result.getOutcome() != Outcome.Resolved)
+            return new Entry(path, result.getOutcome(), timeMillis, getFailureMessage(result));
+
+        Entry entry = new Entry(path, Outcome.Resolved, timeMillis, null);
+        if (runBundles == null)
+            runBundles = Collections.emptyList();
+
+        Set<String> previousNames = new HashSet<String>();
+        Map<String,String> previousRanges = new TreeMap<String,String>();
+        for (VersionedClause runBundle : runBundles) {
+            previousNames.add(runBundle.getName());
+            previousRanges.put(runBundle.getName(), runBundle.getVersionRange());
+        }
+        PreferPreviousSolutionCallback previous = new PreferPreviousSolutionCallback(runBundles);
+
+        Set<String> resolvedNames = new HashSet<String>();
+        for (Resource resource : result.getResourceWirings().keySet()) {
+            String bsn;
+            Version version;
+            try {
+                bsn = ResourceUtils.getIdentity(resource);
+                version = ResourceUtils.getVersion(resource);
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            resolvedNames.add(bsn);
+            if (!previousNames.contains(bsn))
+                entry.added.add(bsn + " " + version);
+            else if (!previous.isPreferred(resource))
+                entry.changed.add(bsn + " " + previousRanges.get(bsn) + " -> " + version);
+        }
+        for (Map.Entry<String,String> runBundle : previousRanges.entrySet()) {
+            if (!resolvedNames.contains(runBundle.getKey()))
+                entry.removed.add(runBundle.getValue() != null ? runBundle.getKey() + " " + runBundle.getValue() : runBundle.getKey());
+        }
+        Collections.sort(entry.added);
+        Collections.sort(entry.changed);
+        return entry;
+    }
+
+    private static String getFailureMessage(ResolutionResult result) {
+        IStatus status = result.getStatus();
+        if (status != null) {
+            if (status.isMultiStatus()) {
+                for (IStatus child : status.getChildren()) {
+                    if (child.matches(IStatus.ERROR | IStatus.WARNING))
+                        return child.getMessage();
+                }
+            } else if (status.matches(IStatus.ERROR | IStatus.WARNING)) {
+                return status.getMessage();
+            }
+        }
+        return result.getOutcome().toString();
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getResolvedCount() {
+        int count = 0;
+        for (Entry entry : entries) {
+            if (entry.getOutcome() == Outcome.Resolved)
+                count++;
+        }
+        return count;
+    }
+
+    public boolean isAllResolved() {
+        return getResolvedCount() == entries.size();
+    }
+
+    public String getSummary() {
+        return String.format("Resolved %d of %d run descriptors in %d ms.", getResolvedCount(), entries.size(), timeMillis);
+    }
+
+    /**
+     * Convert the report into a status with one child per run descriptor: OK if it resolved to the current
+     * -runbundles, INFO if it resolved to different bundles, and ERROR if it did not resolve.
+     */
+    public IStatus toStatus() {
+        MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, getSummary(), null);
+        for (Entry entry : entries) {
+            int severity;
+            StringBuilder message = new StringBuilder(entry.getPath()).append(": ");
+            if (entry.getOutcome() != Outcome.Resolved) {
+                severity = IStatus.ERROR;
+                message.append(entry.getMessage());
+            } else if (entry.hasRunBundleChanges()) {
+                severity = IStatus.INFO;
+                message.append(String.format("-runbundles changed (%d added, %d removed, %d changed)", entry.added.size(), entry.removed.size(), entry.changed.size()));
+            } else {
+                severity = IStatus.OK;
+                message.append("unchanged");
+            }
+            message.append(String.format(" [%d ms]", entry.getTimeMillis()));
+            status.add(new Status(severity, Plugin.PLUGIN_ID, 0, message.toString(), null));
+        }
+        return status;
+    }
+
+    /**
+     * Format the report as plain text, e.g. for the console output of a continuous integration build.
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getSummary()).append('\n');
+        for (Entry entry : entries) {
+            builder.append('\n').append(String.format("%-10s %s [%d ms]", entry.getOutcome().toString().toUpperCase(), entry.getPath(), entry.getTimeMillis())).append('\n');
+            if (entry.getMessage() != null)
+                builder.append("    ! ").append(entry.getMessage()).append('\n');
+            for (String added : entry.added)
+                builder.append("    + ").append(added).append('\n');
+            for (String removed : entry.removed)
+                builder.append("    - ").append(removed).append('\n');
+            for (String changed : entry.changed)
+                builder.append("    ~ ").append(changed).append('\n');
+        }
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+package org.bndtools.core.resolve;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.bndtools.core.resolve.ResolutionStatistics.RepositoryStatistics;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.service.Registry;
+
+/**
+ * A registry that delegates to the workspace, but wraps each {@link Repository} plugin so that the calls to
+ * {@link Repository#findProviders(Collection)} made during a resolve are recorded in the resolution statistics. If a
+ * {@link RepositoryFanOut} is given, the repositories are queried through it.
+ */
+class InstrumentedRegistry implements Registry {
+
+    private final Registry delegate;
+    private final ResolutionStatistics statistics;
+    private final RepositoryFanOut fanOut;
+
+    InstrumentedRegistry(Registry delegate, ResolutionStatistics statistics) {
+        this(delegate, statistics, null);
+    }
+
+    InstrumentedRegistry(Registry delegate, ResolutionStatistics statistics, RepositoryFanOut fanOut) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+        this.fanOut = fanOut;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getPlugins(Class<T> clazz) {
+        List<T> plugins = delegate.getPlugins(clazz);
+        if (clazz != Repository.class)
+            return plugins;
+
+        List<Repository> wrapped = new ArrayList<Repository>(plugins.size());
+        for (T plugin : plugins)
+            wrapped.add(new TimedRepository((Repository) plugin, statistics.getRepository(plugin.toString())));
+        if (fanOut != null)
+            wrapped = fanOut.wrap(wrapped);
+        return (List<T>) wrapped;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getPlugin(Class<T> clazz) {
+        T plugin = delegate.getPlugin(clazz);
+        if (clazz != Repository.class || plugin == null)
+            return plugin;
+        Repository wrapped = new TimedRepository((Repository) plugin, statistics.getRepository(plugin.toString()));
+        if (fanOut != null)
+            wrapped = fanOut.wrap(Collections.singletonList(wrapped)).get(0);
+        return (T) wrapped;
+    }
+
+    static class TimedRepository implements Repository {
+        private final Repository repository;
+        private final RepositoryStatistics statistics;
+
+        TimedRepository(Repository repository, RepositoryStatistics statistics) {
+            this.repository = repository;
+            this.statistics = statistics;
+        }
+
+        public Map<Requirement,Collection<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
+            long start = System.nanoTime();
+            Map<Requirement,Collection<Capability>> result = repository.findProviders(requirements);
+
+            int capabilities = 0;
+            if (result != null)
+                for (Collection<Capability> caps : result.values())
+                    capabilities += caps != null ? caps.size() : 0;
+            statistics.record(requirements.size(), capabilities, System.nanoTime() - start);
+            return result;
+        }
+
+        // The resolve context selects repositories by name (-runrepos), so keep the original name
+        @Override
+        public String toString() {
+            return repository.toString();
+        }
+    }
+
+}
@@ -4,6 +4,8 @@ import org.eclipse.osgi.util.NLS;
 
 public class Messages extends NLS {
     private static final String BUNDLE_NAME = "org.bndtools.core.resolve.messages"; //$NON-NLS-1$
+    public static String BatchResolveJob_errorResolving;
+    public static String BatchResolveJob_jobName;
     public static String ResolutionJob_errorFrameworkOrExecutionEnvironmentUnspecified;
     public static String ResolutionJob_jobName;
     public static String ResolveOperation_errorAddingPackageCaps;
@@ -18,7 +20,13 @@ public class Messages extends NLS {
     public static String ResolveOperation_invalidRunFile;
     public static String ResolveOperation_missingFramework;
     public static String ResolveOperation_missingJrePackageDefinition;
+    public static String ResolveOperation_progress;
     public static String ResolveOperation_progressLabel;
+    public static String ResolveOperation_timeBudgetExceeded;
+    public static String ResolveOperation_timeoutCandidates;
+    public static String ResolveOperation_timeoutLastRequirement;
+    public static String ResolveOperation_timeoutProgress;
+    public static String ResolveOperation_waitingForWorkspaceIndex;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
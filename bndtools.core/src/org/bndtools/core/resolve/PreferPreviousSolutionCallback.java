@@ -0,0 +1,105 @@
+package org.bndtools.core.resolve;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bndtools.utils.resources.ResourceUtils;
+import org.osgi.framework.Version;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.build.model.clauses.VersionedClause;
+import aQute.bnd.version.VersionRange;
+import biz.aQute.resolve.ResolutionCallback;
+
+/**
+ * A resolution callback that moves candidates provided by the bundles of a previous solution (i.e. the current
+ * -runbundles) to the front of the candidate list, keeping the relative order of all other candidates. The resolver
+ * tries candidates in order, so it converges on the previous solution first and only explores alternatives where the
+ * previous solution no longer fits.
+ */
+public class PreferPreviousSolutionCallback implements ResolutionCallback {
+
+    // bsn -> version ranges of that bsn in the previous solution; a null range matches any version
+    private final Map<String,List<VersionRange>> preferred = new HashMap<String,List<VersionRange>>();
+
+    public PreferPreviousSolutionCallback(List<VersionedClause> runBundles) {
+        for (VersionedClause runBundle : runBundles) {
+            List<VersionRange> ranges = preferred.get(runBundle.getName());
+            if (ranges == null) {
+                ranges = new ArrayList<VersionRange>(1);
+                preferred.put(runBundle.getName(), ranges);
+            }
+            ranges.add(parseRange(runBundle.getVersionRange()));
+        }
+    }
+
+    public boolean isEmpty() {
+        return preferred.isEmpty();
+    }
+
+    public void processCandidates(Requirement requirement, Set<Capability> wired, List<Capability> candidates) {
+        if (candidates.size() < 2)
+            return;
+
+        List<Capability> first = new ArrayList<Capability>(candidates.size());
+        List<Capability> rest = new ArrayList<Capability>(candidates.size());
+        for (Capability candidate : candidates) {
+            if (isPreferred(candidate.getResource()))
+                first.add(candidate);
+            else
+                rest.add(candidate);
+        }
+
+        if (first.isEmpty() || rest.isEmpty())
+            return;
+
+        candidates.clear();
+        candidates.addAll(first);
+        candidates.addAll(rest);
+    }
+
+    boolean isPreferred(Resource resource) {
+        if (resource == null)
+            return false;
+
+        String bsn;
+        Version version;
+        try {
+            bsn = ResourceUtils.getIdentity(resource);
+            version = ResourceUtils.getVersion(resource);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        List<VersionRange> ranges = preferred.get(bsn);
+        if (ranges == null)
+            return false;
+
+        aQute.bnd.version.Version bndVersion = new aQute.bnd.version.Version(version.toString());
+        for (VersionRange range : ranges) {
+            if (range == null)
+                return true;
+            // In -runbundles a bare version denotes that version, not a minimum
+            if (range.isRange() ? range.includes(bndVersion) : range.getLow().getWithoutQualifier().equals(bndVersion.getWithoutQualifier()))
+                return true;
+        }
+        return false;
+    }
+
+    private static VersionRange parseRange(String range) {
+        if (range == null)
+            return null;
+        try {
+            return new VersionRange(range);
+        } catch (IllegalArgumentException e) {
+            // e.g. "latest" or "snapshot" for workspace bundles
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.bndtools.core.resolve;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.resource.Capability;
+
+/**
+ * The provider lookups of one or more resolves, together with the threads that perform them. By default each resolve
+ * creates its own cache; a cache can be shared by several resolves running against the same, unchanging repositories
+ * (see {@link ResolveOperation#setProviderCache(ProviderCache)}) so that each lookup is only performed once. The owner
+ * of a shared cache must {@link #dispose()} it when the resolves are complete.
+ */
+public class ProviderCache {
+
+    private static final int MAX_THREADS = 8;
+
+    private final ConcurrentMap<String,FutureTask<Collection<Capability>>> lookups = new ConcurrentHashMap<String,FutureTask<Collection<Capability>>>();
+    private final ConcurrentMap<String,Object> locks = new ConcurrentHashMap<String,Object>();
+
+    private ExecutorService executor;
+    private boolean disposed = false;
+
+    FutureTask<Collection<Capability>> get(String key) {
+        return lookups.get(key);
+    }
+
+    /**
+     * Store the lookup under the key unless one is present already.
+     *
+     * @return The lookup previously stored under the key, or null if the given lookup was stored.
+     */
+    FutureTask<Collection<Capability>> putIfAbsent(String key, FutureTask<Collection<Capability>> lookup) {
+        return lookups.putIfAbsent(key, lookup);
+    }
+
+    void remove(String key, FutureTask<Collection<Capability>> lookup) {
+        lookups.remove(key, lookup);
+    }
+
+    /**
+     * Return the object to synchronize on while querying the named repository.
+     */
+    Object getLock(String repositoryName) {
+        Object lock = locks.get(repositoryName);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = locks.putIfAbsent(repositoryName, newLock);
+            if (lock == null)
+                lock = newLock;
+        }
+        return lock;
+    }
+
+    /**
+     * Run the lookup in the background. Does nothing once the cache has been disposed; the lookup then runs when its
+     * result is first requested.
+     */
+    synchronized void execute(FutureTask<Collection<Capability>> lookup) {
+        if (disposed)
+            return;
+        if (executor == null)
+            executor = Executors.newFixedThreadPool(MAX_THREADS, new LookupThreadFactory());
+        executor.execute(lookup);
+    }
+
+    /**
+     * Stop all outstanding lookups and discard the cached results.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        if (executor != null)
+            executor.shutdownNow();
+        lookups.clear();
+    }
+
+    private static class LookupThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Resolve Repository Lookup " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+package org.bndtools.core.resolve;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+/**
+ * Queries the repositories of a single resolve concurrently. When the provider of a requirement is looked up in any of
+ * the participating repositories, the lookup is started in all of them at once, so that a slow (e.g. remote) repository
+ * no longer adds its latency to every lookup round. The resolver still receives the results one repository at a time, in
+ * its own repository order, so the outcome is identical to a sequential lookup. Results are kept in a
+ * {@link ProviderCache} for the lifetime of the resolve, or longer if the cache is shared.
+ * <p>
+ * Each repository is only ever queried from one thread at a time.
+ */
+class RepositoryFanOut {
+
+    private final List<String> includedNames;
+    private final ProviderCache cache;
+    private final boolean ownsCache;
+
+    private final Map<String,Integer> memberIndexes = new HashMap<String,Integer>();
+    private final List<Repository> members = new ArrayList<Repository>();
+
+    private ResolveProgress progress;
+
+    /**
+     * @param includedNames
+     *            The names of the repositories taking part in the resolve (i.e. -runrepos), or null or empty for all
+     *            repositories.
+     * @param sharedCache
+     *            A cache shared with other resolves, or null to use a private cache that is discarded by
+     *            {@link #dispose()}.
+     */
+    RepositoryFanOut(List<String> includedNames, ProviderCache sharedCache) {
+        this.includedNames = includedNames != null && !includedNames.isEmpty() ? includedNames : null;
+        this.ownsCache = sharedCache == null;
+        this.cache = ownsCache ? new ProviderCache() : sharedCache;
+    }
+
+    /**
+     * Return views of the repositories that take part in the fan-out. Repositories that are excluded from the resolve
+     * are returned unchanged. The returned list has the same order as the argument.
+     */
+    synchronized List<Repository> wrap(List<Repository> repositories) {
+        List<Repository> result = new ArrayList<Repository>(repositories.size());
+        for (Repository repository : repositories) {
+            String name = repository.toString();
+            if (includedNames != null && !includedNames.contains(name)) {
+                result.add(repository);
+                continue;
+            }
+
+            Integer index = memberIndexes.get(name);
+            if (index == null) {
+                index = members.size();
+                members.add(repository);
+                memberIndexes.put(name, index);
+            }
+            result.add(new FanOutRepository(index, repository));
+        }
+        return result;
+    }
+
+    /**
+     * Check for cancellation while waiting for lookups that run in the background.
+     */
+    void setProgress(ResolveProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Must be called when the resolve has finished.
+     */
+    void dispose() {
+        if (ownsCache)
+            cache.dispose();
+    }
+
+    private synchronized List<Repository> getMembers() {
+        return new ArrayList<Repository>(members);
+    }
+
+    private Collection<Capability> findProviders(int index, Requirement requirement) {
+        String requirementKey = createKey(requirement);
+        List<Repository> repositories = getMembers();
+
+        String ownKey = null;
+        FutureTask<Collection<Capability>> own = null;
+        for (int i = 0; i < repositories.size(); i++) {
+            Repository repository = repositories.get(i);
+            String key = repository.toString() + "\n" + requirementKey;
+
+            FutureTask<Collection<Capability>> lookup = cache.get(key);
+            if (lookup == null) {
+                FutureTask<Collection<Capability>> newLookup = createLookup(repository, requirement);
+                lookup = cache.putIfAbsent(key, newLookup);
+                if (lookup == null) {
+                    lookup = newLookup;
+                    if (i != index)
+                        cache.execute(lookup);
+                }
+            }
+            if (i == index) {
+                ownKey = key;
+                own = lookup;
+            }
+        }
+
+        // Runs the lookup on the calling thread if no worker has picked it up yet; otherwise waits for it
+        own.run();
+        try {
+            while (true) {
+                try {
+                    return new ArrayList<Capability>(own.get(100, TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    if (progress != null)
+                        progress.checkCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResolveCancelledException();
+        } catch (ExecutionException e) {
+            // Do not cache failures
+            cache.remove(ownKey, own);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private FutureTask<Collection<Capability>> createLookup(final Repository repository, final Requirement requirement) {
+        final Object lock = cache.getLock(repository.toString());
+        return new FutureTask<Collection<Capability>>(new Callable<Collection<Capability>>() {
+            public Collection<Capability> call() throws Exception {
+                Map<Requirement,Collection<Capability>> result;
+                synchronized (lock) {
+                    result = repository.findProviders(Collections.singleton(requirement));
+                }
+                Collection<Capability> providers = result != null ? result.get(requirement) : null;
+                if (providers == null && result != null && result.size() == 1)
+                    providers = result.values().iterator().next();
+                return providers != null ? providers : Collections.<Capability> emptyList();
+            }
+        });
+    }
+
+    private static String createKey(Requirement requirement) {
+        StringBuilder builder = new StringBuilder(requirement.getNamespace());
+        for (Entry<String,String> entry : new TreeMap<String,String>(requirement.getDirectives()).entrySet())
+            builder.append(';').append(entry.getKey()).append(":=").append(entry.getValue());
+        for (Entry<String,Object> entry : new TreeMap<String,Object>(requirement.getAttributes()).entrySet())
+            builder.append(';').append(entry.getKey()).append('=').append(entry.getValue());
+        return builder.toString();
+    }
+
+    private class FanOutRepository implements Repository {
+        private final int index;
+        private final Repository repository;
+
+        FanOutRepository(int index, Repository repository) {
+            this.index = index;
+            this.repository = repository;
+        }
+
+        public Map<Requirement,Collection<Capability>> findProviders(Collection< ? extends Requirement> requirements) {
+            Map<Requirement,Collection<Capability>> result = new LinkedHashMap<Requirement,Collection<Capability>>();
+            for (Requirement requirement : requirements)
+                result.put(requirement, RepositoryFanOut.this.findProviders(index, requirement));
+            return result;
+        }
+
+        // The resolve context selects repositories by name (-runrepos), so keep the original name
+        @Override
+        public String toString() {
+            return repository.toString();
+        }
+    }
+
+}
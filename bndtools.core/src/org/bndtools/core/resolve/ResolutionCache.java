@@ -0,0 +1,157 @@
+package org.bndtools.core.resolve;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.bndtools.core.resolve.ResolutionResult.Outcome;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.build.model.clauses.HeaderClause;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.lib.hex.Hex;
+import bndtools.central.Central;
+
+/**
+ * Caches resolution results, keyed by a digest of the resolve-relevant headers of a run descriptor together with the
+ * change epochs of the repositories. Saving a file whose resolve inputs have not changed (e.g. only a comment or
+ * -runproperties was edited) therefore does not trigger a new resolve.
+ * <p>
+ * The headers are taken both from the edited model and, with includes and the workspace properties applied, from the
+ * file on disk, so that a change to an included file or to the workspace configuration also changes the key.
+ */
+public class ResolutionCache {
+
+    private static final int MAX_ENTRIES = 16;
+
+    /** Headers whose values affect the outcome of a resolve. */
+    private static final String[] RESOLVE_HEADERS = new String[] {
+            Constants.RUNFW, Constants.RUNEE, Constants.RUNREQUIRE, Constants.RUNREQUIRES, "-runblacklist", Constants.RUNREPOS, Constants.RUNSYSTEMPACKAGES, Constants.RUNSYSTEMCAPABILITIES, Constants.RUNPATH, "-resolve.effective"
+    };
+
+    private static final ResolutionCache instance = new ResolutionCache();
+
+    private final Map<String,ResolutionResult> cache = new LinkedHashMap<String,ResolutionResult>(MAX_ENTRIES, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,ResolutionResult> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static ResolutionCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Compute the cache key for the current state of the model and the repositories. The result of an incremental
+     * resolve depends on the previous solution it starts from, so its key also contains the current -runbundles.
+     */
+    public String createKey(BndEditModel model, boolean incremental) throws Exception {
+        StringBuilder builder = new StringBuilder();
+
+        File bndFile = model.getBndResource();
+        if (bndFile != null)
+            builder.append(bndFile.getAbsolutePath());
+
+        for (String header : RESOLVE_HEADERS) {
+            builder.append('\n').append(header).append('=');
+            normalize(model.genericGet(header), builder);
+        }
+
+        if (bndFile != null && bndFile.isFile()) {
+            Processor processor = new Processor(Central.getWorkspace());
+            try {
+                processor.setProperties(bndFile);
+                for (String header : RESOLVE_HEADERS)
+                    builder.append('\n').append(header).append(":effective=").append(processor.getProperty(header, ""));
+            } finally {
+                processor.close();
+            }
+        }
+
+        if (incremental) {
+            builder.append('\n').append(Constants.RUNBUNDLES).append(":incremental=");
+            normalize(model.getRunBundles(), builder);
+        }
+
+        builder.append("\nworkspace=").append(Central.getWorkspaceR5Repository().getEpoch());
+        builder.append("\nrepositories=").append(Central.getRepositoryEpochs().snapshot());
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        return Hex.toHexString(digest.digest(builder.toString().getBytes("UTF-8")));
+    }
+
+    public synchronized ResolutionResult get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Store a result. Only complete outcomes (resolved or unresolved) are cached; errors and cancellations are not.
+     */
+    public synchronized void put(String key, ResolutionResult result) {
+        if (result.getOutcome() == Outcome.Resolved || result.getOutcome() == Outcome.Unresolved)
+            cache.put(key, result);
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    private static void normalize(Object value, StringBuilder builder) {
+        if (value == null) {
+            return;
+        } else if (value instanceof Requirement) {
+            Requirement req = (Requirement) value;
+            normalizeCapReq(req.getNamespace(), req.getAttributes(), req.getDirectives(), builder);
+        } else if (value instanceof Capability) {
+            Capability cap = (Capability) value;
+            normalizeCapReq(cap.getNamespace(), cap.getAttributes(), cap.getDirectives(), builder);
+        } else if (value instanceof HeaderClause) {
+            ((HeaderClause) value).formatTo(builder);
+        } else if (value instanceof Collection< ? >) {
+            builder.append('[');
+            for (Object element : (Collection< ? >) value) {
+                normalize(element, builder);
+                builder.append(',');
+            }
+            builder.append(']');
+        } else if (value instanceof Map< ? , ? >) {
+            List<String> entries = new ArrayList<String>();
+            for (Entry< ? , ? > entry : ((Map< ? , ? >) value).entrySet()) {
+                StringBuilder entryBuilder = new StringBuilder();
+                entryBuilder.append(entry.getKey()).append('=');
+                normalize(entry.getValue(), entryBuilder);
+                entries.add(entryBuilder.toString());
+            }
+            Collections.sort(entries);
+            builder.append(entries);
+        } else if (value instanceof Enum< ? >) {
+            builder.append(((Enum< ? >) value).name());
+        } else {
+            builder.append(value.toString().trim());
+        }
+    }
+
+    private static void normalizeCapReq(String namespace, Map<String,Object> attribs, Map<String,String> directives, StringBuilder builder) {
+        builder.append(namespace);
+        for (Entry<String,String> entry : new TreeMap<String,String>(directives).entrySet())
+            builder.append(';').append(entry.getKey()).append(":=").append(entry.getValue());
+        for (Entry<String,Object> entry : new TreeMap<String,Object>(attribs).entrySet()) {
+            builder.append(';').append(entry.getKey()).append('=');
+            normalize(entry.getValue(), builder);
+        }
+    }
+
+}
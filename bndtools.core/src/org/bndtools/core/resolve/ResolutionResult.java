@@ -15,17 +15,23 @@ public class ResolutionResult {
     private final IStatus status;
     private final String log;
     private final ResolutionException resolutionException;
+    private final ResolutionStatistics statistics;
 
     public static enum Outcome {
         Resolved, Unresolved, Error, Cancelled
     }
 
     public ResolutionResult(Outcome outcome, Map<Resource,List<Wire>> resourceWirings, ResolutionException resolutionExceptoin, IStatus status, String log) {
+        this(outcome, resourceWirings, resolutionExceptoin, status, log, null);
+    }
+
+    public ResolutionResult(Outcome outcome, Map<Resource,List<Wire>> resourceWirings, ResolutionException resolutionExceptoin, IStatus status, String log, ResolutionStatistics statistics) {
         this.outcome = outcome;
         this.resourceWirings = resourceWirings;
         this.resolutionException = resolutionExceptoin;
         this.status = status;
         this.log = log;
+        this.statistics = statistics;
     }
 
     public Outcome getOutcome() {
@@ -48,4 +54,11 @@ public class ResolutionResult {
         return log;
     }
 
+    /**
+     * Returns the statistics collected during the resolve, or null if none were collected.
+     */
+    public ResolutionStatistics getStatistics() {
+        return statistics;
+    }
+
 }
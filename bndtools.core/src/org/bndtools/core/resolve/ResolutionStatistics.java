@@ -0,0 +1,129 @@
+package org.bndtools.core.resolve;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Structured counters collected during a single resolve. All methods are thread-safe.
+ */
+public class ResolutionStatistics {
+
+    /** Per-repository counters. */
+    public static class RepositoryStatistics {
+        private final String name;
+        private int calls;
+        private int requirements;
+        private int capabilities;
+        private long nanos;
+
+        RepositoryStatistics(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized int getCalls() {
+            return calls;
+        }
+
+        public synchronized int getRequirements() {
+            return requirements;
+        }
+
+        public synchronized int getCapabilities() {
+            return capabilities;
+        }
+
+        public synchronized long getTimeMillis() {
+            return nanos / 1000000L;
+        }
+
+        synchronized void record(int requirements, int capabilities, long nanos) {
+            this.calls++;
+            this.requirements += requirements;
+            this.capabilities += capabilities;
+            this.nanos += nanos;
+        }
+    }
+
+    private final Map<String,RepositoryStatistics> repositories = new LinkedHashMap<String,RepositoryStatistics>();
+    private final Map<String,Integer> candidatesPerRequirement = new HashMap<String,Integer>();
+    private int requirementsProcessed = 0;
+    private long totalCandidates = 0;
+    private int failedPermutations = 0;
+    private long resolveTimeMillis = 0;
+
+    synchronized RepositoryStatistics getRepository(String name) {
+        RepositoryStatistics stats = repositories.get(name);
+        if (stats == null) {
+            stats = new RepositoryStatistics(name);
+            repositories.put(name, stats);
+        }
+        return stats;
+    }
+
+    synchronized void recordCandidates(String requirement, int candidates) {
+        requirementsProcessed++;
+        totalCandidates += candidates;
+        Integer previous = candidatesPerRequirement.get(requirement);
+        if (previous == null || previous.intValue() < candidates)
+            candidatesPerRequirement.put(requirement, candidates);
+    }
+
+    synchronized void recordFailedPermutation() {
+        failedPermutations++;
+    }
+
+    synchronized void setResolveTimeMillis(long resolveTimeMillis) {
+        this.resolveTimeMillis = resolveTimeMillis;
+    }
+
+    public synchronized List<RepositoryStatistics> getRepositories() {
+        return new ArrayList<RepositoryStatistics>(repositories.values());
+    }
+
+    public synchronized int getRequirementsProcessed() {
+        return requirementsProcessed;
+    }
+
+    public synchronized long getTotalCandidates() {
+        return totalCandidates;
+    }
+
+    public synchronized int getFailedPermutations() {
+        return failedPermutations;
+    }
+
+    public synchronized long getResolveTimeMillis() {
+        return resolveTimeMillis;
+    }
+
+    /**
+     * Returns the requirements with the highest number of candidates, in descending order of candidate count.
+     */
+    public synchronized List<Entry<String,Integer>> getTopRequirements(int max) {
+        List<Entry<String,Integer>> entries = new ArrayList<Entry<String,Integer>>(candidatesPerRequirement.entrySet());
+        Collections.sort(entries, new Comparator<Entry<String,Integer>>() {
+            public int compare(Entry<String,Integer> e1, Entry<String,Integer> e2) {
+                return e2.getValue().compareTo(e1.getValue());
+            }
+        });
+        List<Entry<String,Integer>> result = new ArrayList<Entry<String,Integer>>(Math.min(max, entries.size()));
+        for (Entry<String,Integer> entry : entries) {
+            if (result.size() >= max)
+                break;
+            result.add(new SimpleImmutableEntry<String,Integer>(entry));
+        }
+        return result;
+    }
+
+}
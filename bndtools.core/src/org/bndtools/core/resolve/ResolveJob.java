@@ -3,6 +3,8 @@ package org.bndtools.core.resolve;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.bndtools.api.ILogger;
+import org.bndtools.api.Logger;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -14,10 +16,14 @@ import biz.aQute.resolve.ResolutionCallback;
 import bndtools.Plugin;
 
 public class ResolveJob extends Job {
+    private static final ILogger logger = Logger.getLogger(ResolveJob.class);
 
     private final BndEditModel model;
     private final List<ResolutionCallback> callbacks = new LinkedList<ResolutionCallback>();
 
+    private boolean incremental = false;
+    private boolean useCache = false;
+
     private ResolutionResult result;
 
     public ResolveJob(BndEditModel model) {
@@ -26,6 +32,10 @@ public class ResolveJob extends Job {
     }
 
     public IStatus validateBeforeRun() {
+        return validate(model);
+    }
+
+    static IStatus validate(BndEditModel model) {
         String runfw = model.getRunFw();
         if (runfw == null)
             return new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, Messages.ResolutionJob_errorFrameworkOrExecutionEnvironmentUnspecified, null);
@@ -39,10 +49,29 @@ public class ResolveJob extends Job {
 
     @Override
     protected IStatus run(IProgressMonitor monitor) {
-        ResolveOperation operation = new ResolveOperation(model, callbacks);
+        // Interactive callbacks may influence the result, so only cache non-interactive resolves
+        ResolutionCache cache = ResolutionCache.getInstance();
+        String cacheKey = null;
+        if (callbacks.isEmpty()) {
+            try {
+                cacheKey = cache.createKey(model, incremental);
+                ResolutionResult cached = useCache ? cache.get(cacheKey) : null;
+                if (cached != null) {
+                    result = cached;
+                    return Status.OK_STATUS;
+                }
+            } catch (Exception e) {
+                logger.logError("Error computing resolution cache key", e);
+            }
+        }
+
+        ResolveOperation operation = new ResolveOperation(model, callbacks, incremental);
         operation.run(monitor);
         result = operation.getResult();
 
+        if (cacheKey != null && result != null)
+            cache.put(cacheKey, result);
+
         return Status.OK_STATUS;
     }
 
@@ -50,6 +79,21 @@ public class ResolveJob extends Job {
         return result;
     }
 
+    /**
+     * Prefer the bundles of the current -runbundles when resolving, see {@link ResolveOperation}.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Return a cached result for unchanged resolve inputs rather than resolving again. A resolve requested explicitly by
+     * the user should always run, so the cache is not used by default; the result is cached in either case.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+
     public void addCallback(ResolutionCallback callback) {
         callbacks.add(callback);
     }
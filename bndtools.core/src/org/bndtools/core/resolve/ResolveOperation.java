@@ -1,8 +1,12 @@
 package org.bndtools.core.resolve;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.felix.resolver.ResolverImpl;
 import org.bndtools.core.resolve.ResolutionResult.Outcome;
@@ -11,6 +15,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.resource.Resource;
@@ -20,17 +25,24 @@ import org.osgi.service.coordinator.Coordinator;
 import org.osgi.service.resolver.ResolutionException;
 
 import aQute.bnd.build.model.BndEditModel;
+import aQute.bnd.build.model.clauses.VersionedClause;
 import aQute.bnd.deployer.repository.ReporterLogService;
+import aQute.bnd.service.Registry;
 import biz.aQute.resolve.ResolutionCallback;
 import biz.aQute.resolve.ResolveProcess;
 import bndtools.Plugin;
 import bndtools.central.Central;
+import bndtools.central.WorkspaceR5Repository;
+import bndtools.preferences.BndPreferences;
 
 public class ResolveOperation implements IRunnableWithProgress {
 
     private final BndEditModel model;
     private final List<ResolutionCallback> callbacks;
+    private final boolean incremental;
 
+    private ProviderCache providerCache;
+    private long timeBudgetMillis = -1;
     private ResolutionResult result;
 
     public ResolveOperation(BndEditModel model) {
@@ -38,11 +50,50 @@ public class ResolveOperation implements IRunnableWithProgress {
     }
 
     public ResolveOperation(BndEditModel model, List<ResolutionCallback> callbacks) {
+        this(model, callbacks, false);
+    }
+
+    /**
+     * @param incremental
+     *            If true, the bundles of the current -runbundles are preferred over other candidates, so that a small
+     *            change in the requirements is resolved close to the previous solution. If no solution is found that
+     *            way, a full resolve is performed.
+     */
+    public ResolveOperation(BndEditModel model, List<ResolutionCallback> callbacks, boolean incremental) {
         this.model = model;
         this.callbacks = callbacks;
+        this.incremental = incremental;
     }
 
     public void run(IProgressMonitor monitor) {
+        monitor.beginTask(Messages.ResolveOperation_progressLabel, IProgressMonitor.UNKNOWN);
+        try {
+            // The budget covers both attempts of an incremental resolve
+            long budget = timeBudgetMillis >= 0 ? timeBudgetMillis : new BndPreferences().getResolveTimeBudget() * 1000L;
+            long deadline = budget > 0 ? System.currentTimeMillis() + budget : 0;
+
+            if (incremental) {
+                List<VersionedClause> runBundles = model.getRunBundles();
+                PreferPreviousSolutionCallback seed = new PreferPreviousSolutionCallback(runBundles != null ? runBundles : Collections.<VersionedClause> emptyList());
+                if (!seed.isEmpty()) {
+                    List<ResolutionCallback> seededCallbacks = new ArrayList<ResolutionCallback>(callbacks.size() + 1);
+                    seededCallbacks.add(seed);
+                    seededCallbacks.addAll(callbacks);
+
+                    result = resolve(seededCallbacks, monitor, budget, deadline);
+                    if (result.getOutcome() != Outcome.Unresolved)
+                        return;
+                    // Fall back to a full resolve, which also gives the unbiased diagnosis
+                }
+            }
+            result = resolve(callbacks, monitor, budget, deadline);
+        } finally {
+            monitor.done();
+        }
+    }
+
+    private ResolutionResult resolve(List<ResolutionCallback> callbacks, IProgressMonitor monitor, long budget, long deadline) {
+        ResolutionResult result;
         MultiStatus status = new MultiStatus(Plugin.PLUGIN_ID, 0, Messages.ResolveOperation_errorOverview, null);
 
         // Start a coordination
@@ -53,36 +104,115 @@ public class ResolveOperation implements IRunnableWithProgress {
 
         // Begin resolve
         ResolveProcess resolve = new ResolveProcess();
-        ResolverLogger logger = new ResolverLogger();
+        ResolutionStatistics statistics = new ResolutionStatistics();
+        ResolverLogger logger = new ResolverLogger(ResolverLogger.DEFAULT_LEVEL, ResolverLogger.DEFAULT_MAX_CHARS, getLogFile(), statistics);
+        RepositoryFanOut fanOut = new RepositoryFanOut(model.getRunRepos(), providerCache);
+        ResolveProgress progress = new ResolveProgress(monitor, statistics, deadline);
+        logger.setProgress(progress);
+        fanOut.setProgress(progress);
+        long start = System.currentTimeMillis();
         try {
+            waitForWorkspaceRepository(progress, monitor);
+
             ResolverImpl felixResolver = new ResolverImpl(logger);
 
+            // Check for cancellation before any interactive callback runs
+            List<ResolutionCallback> allCallbacks = new ArrayList<ResolutionCallback>(callbacks.size() + 2);
+            allCallbacks.add(progress);
+            allCallbacks.addAll(callbacks);
+            allCallbacks.add(new StatisticsCallback(statistics));
+
             ReporterLogService log = new ReporterLogService(Central.getWorkspace());
-            Map<Resource,List<Wire>> wirings = resolve.resolveRequired(model, Central.getWorkspace(), felixResolver, callbacks, log);
-            result = new ResolutionResult(Outcome.Resolved, wirings, null, status, logger.getLog());
+            Registry registry = new InstrumentedRegistry(Central.getWorkspace(), statistics, fanOut);
+            Map<Resource,List<Wire>> wirings = resolve.resolveRequired(model, registry, felixResolver, allCallbacks, log);
+            result = new ResolutionResult(Outcome.Resolved, wirings, null, status, logger.getLog(), statistics);
             if (coordination != null)
                 coordination.end();
         } catch (ResolveCancelledException e) {
-            result = new ResolutionResult(Outcome.Cancelled, null, null, status, logger.getLog());
+            if (progress.isTimedOut())
+                addTimeoutDiagnosis(status, budget, progress, statistics);
+            result = new ResolutionResult(Outcome.Cancelled, null, null, status, logger.getLog(), statistics);
 
             if (coordination != null)
                 coordination.fail(e);
         } catch (ResolutionException e) {
             status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, e.getLocalizedMessage(), e));
-            result = new ResolutionResult(Outcome.Unresolved, null, null, status, logger.getLog());
+            result = new ResolutionResult(Outcome.Unresolved, null, null, status, logger.getLog(), statistics);
 
             if (coordination != null)
                 coordination.fail(e);
         } catch (Exception e) {
             status.add(new Status(IStatus.ERROR, Plugin.PLUGIN_ID, 0, "Exception during resolution.", e));
-            result = new ResolutionResult(Outcome.Error, null, null, status, logger.getLog());
+            result = new ResolutionResult(Outcome.Error, null, null, status, logger.getLog(), statistics);
 
             if (coordination != null)
                 coordination.fail(e);
         } finally {
+            statistics.setResolveTimeMillis(System.currentTimeMillis() - start);
+            logger.close();
+            fanOut.dispose();
             if (coordinator != null)
                 bc.ungetService(coordSvcRef);
         }
+        return result;
+    }
+
+    /**
+     * Returns the log file of the run descriptor, which is overwritten by each resolve of it, so that resolving often
+     * (e.g. on every save) does not accumulate log files.
+     */
+    private File getLogFile() {
+        if (!new BndPreferences().getResolveLogToFile())
+            return null;
+
+        File dir = Plugin.getDefault().getStateLocation().toFile();
+        File bndFile = model.getBndResource();
+        if (bndFile == null)
+            return new File(dir, "resolve.log");
+
+        // Tell apart run descriptors with the same name in different projects
+        String path = bndFile.getAbsolutePath();
+        return new File(dir, "resolve-" + bndFile.getName() + "-" + Integer.toHexString(path.hashCode()) + ".log");
+    }
+
+    private static void waitForWorkspaceRepository(ResolveProgress progress, IProgressMonitor monitor) throws Exception {
+        WorkspaceR5Repository workspaceRepo = Central.getWorkspaceR5Repository();
+        if (workspaceRepo.isInitialLoadComplete())
+            return;
+
+        monitor.subTask(Messages.ResolveOperation_waitingForWorkspaceIndex);
+        while (!workspaceRepo.waitForInitialLoad(100, TimeUnit.MILLISECONDS))
+            progress.checkCancelled();
+    }
+
+    /**
+     * A resolve that runs out of time has no result, so report what it was doing: the requirement it was working on and
+     * the requirements with the most candidates, which are the usual cause of a long permutation search.
+     */
+    private static void addTimeoutDiagnosis(MultiStatus status, long budget, ResolveProgress progress, ResolutionStatistics statistics) {
+        status.add(new Status(IStatus.WARNING, Plugin.PLUGIN_ID, 0, NLS.bind(Messages.ResolveOperation_timeBudgetExceeded, budget / 1000), null));
+        if (progress.getLastRequirement() != null)
+            status.add(new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, NLS.bind(Messages.ResolveOperation_timeoutLastRequirement, progress.getLastRequirement()), null));
+        status.add(new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, NLS.bind(Messages.ResolveOperation_timeoutProgress, new Object[] {
+                statistics.getRequirementsProcessed(), progress.getConsideredResourceCount(), statistics.getFailedPermutations()
+        }), null));
+        for (Entry<String,Integer> entry : statistics.getTopRequirements(5))
+            status.add(new Status(IStatus.INFO, Plugin.PLUGIN_ID, 0, NLS.bind(Messages.ResolveOperation_timeoutCandidates, entry.getKey(), entry.getValue()), null));
+    }
+
+    /**
+     * Share repository lookups with other resolves. The cache must only be shared while the repositories do not change.
+     */
+    public void setProviderCache(ProviderCache providerCache) {
+        this.providerCache = providerCache;
+    }
+
+    /**
+     * Stop the resolve after the given time and return a {@link Outcome#Cancelled} result with a partial diagnosis. Zero
+     * means no limit; by default the limit is taken from the preferences.
+     */
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
     }
 
     public ResolutionResult getResult() {
@@ -0,0 +1,94 @@
+package org.bndtools.core.resolve;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bndtools.core.resolve.ResolutionStatistics.RepositoryStatistics;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import biz.aQute.resolve.ResolutionCallback;
+
+/**
+ * Reports the progress of a resolve to a progress monitor, and stops the resolve by throwing
+ * {@link ResolveCancelledException} when the monitor is cancelled or the time budget is exceeded. Cancellation is
+ * checked whenever the resolver processes the candidates of a requirement and whenever it abandons a candidate
+ * permutation (see {@link ResolverLogger}), so that long permutation searches can also be stopped.
+ * <p>
+ * Must only be used from the resolving thread.
+ */
+class ResolveProgress implements ResolutionCallback {
+
+    private static final long REPORT_INTERVAL_MILLIS = 250;
+
+    private final IProgressMonitor monitor;
+    private final ResolutionStatistics statistics;
+    private final long deadline;
+
+    private final Set<Resource> consideredResources = new HashSet<Resource>();
+    private Requirement lastRequirement = null;
+    private long lastReport = 0;
+    private boolean timedOut = false;
+
+    /**
+     * @param deadline
+     *            The time (as in {@link System#currentTimeMillis()}) after which the resolve is stopped, or 0 for no
+     *            limit.
+     */
+    ResolveProgress(IProgressMonitor monitor, ResolutionStatistics statistics, long deadline) {
+        this.monitor = monitor;
+        this.statistics = statistics;
+        this.deadline = deadline;
+    }
+
+    public void processCandidates(Requirement requirement, Set<Capability> wired, List<Capability> candidates) {
+        lastRequirement = requirement;
+        for (Capability candidate : candidates)
+            consideredResources.add(candidate.getResource());
+
+        checkCancelled();
+
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= REPORT_INTERVAL_MILLIS) {
+            lastReport = now;
+            int queries = 0;
+            for (RepositoryStatistics repository : statistics.getRepositories())
+                queries += repository.getCalls();
+            monitor.subTask(NLS.bind(Messages.ResolveOperation_progress, new Object[] {
+                    statistics.getRequirementsProcessed(), queries, consideredResources.size()
+            }));
+        }
+    }
+
+    void checkCancelled() {
+        if (monitor.isCanceled())
+            throw new ResolveCancelledException();
+        if (deadline > 0 && System.currentTimeMillis() > deadline) {
+            timedOut = true;
+            throw new ResolveCancelledException();
+        }
+    }
+
+    /**
+     * Returns true if the resolve was stopped because the time budget was exceeded.
+     */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Returns the requirement whose candidates were processed most recently, or null.
+     */
+    Requirement getLastRequirement() {
+        return lastRequirement;
+    }
+
+    int getConsideredResourceCount() {
+        return consideredResources.size();
+    }
+
+}
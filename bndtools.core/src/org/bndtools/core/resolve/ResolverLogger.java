@@ -1,54 +1,164 @@
 package org.bndtools.core.resolve;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 import org.apache.felix.resolver.Logger;
 
+/**
+ * Collects the resolver log. Only the most recent messages are kept in memory, up to a fixed number of characters;
+ * optionally the complete log is streamed to a file. Permutation failures reported by the resolver are counted in the
+ * statistics.
+ */
 class ResolverLogger extends Logger {
 
     public static final int DEFAULT_LEVEL = 4;
+    public static final int DEFAULT_MAX_CHARS = 1024 * 1024;
 
-    private final StringWriter writer = new StringWriter();
-    private final PrintWriter printer = new PrintWriter(writer);
+    private static final String PERMUTATION_FAILED = "Candidate permutation failed";
+
+    private final int maxChars;
+    private final ResolutionStatistics statistics;
+    private final Deque<String> lines = new ArrayDeque<String>();
+    private int chars = 0;
+    private long droppedLines = 0;
+
+    private final File spillFile;
+    private Writer spill;
+
+    private ResolveProgress progress;
 
     public ResolverLogger() {
         this(DEFAULT_LEVEL);
     }
 
     public ResolverLogger(int level) {
+        this(level, DEFAULT_MAX_CHARS, null, null);
+    }
+
+    /**
+     * @param spillFile
+     *            If not null, the complete log is additionally written to this file.
+     * @param statistics
+     *            If not null, receives a count of failed candidate permutations.
+     */
+    public ResolverLogger(int level, int maxChars, File spillFile, ResolutionStatistics statistics) {
         super(level);
+        this.maxChars = maxChars;
+        this.statistics = statistics;
+        this.spillFile = spillFile;
+        if (spillFile != null) {
+            try {
+                spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), "UTF-8"));
+            } catch (IOException e) {
+                spill = null;
+            }
+        }
     }
 
     @Override
     protected void doLog(int level, String msg, Throwable throwable) {
+        boolean permutationFailed = msg != null && msg.startsWith(PERMUTATION_FAILED);
+        if (permutationFailed && statistics != null)
+            statistics.recordFailedPermutation();
+
         String s = "";
         s = s + msg;
         if (throwable != null)
             s = s + " (" + throwable + ")";
         switch (level) {
         case LOG_DEBUG :
-            printer.println("DEBUG: " + s);
+            append("DEBUG: " + s);
             break;
         case LOG_ERROR :
-            printer.println("ERROR: " + s);
+            append("ERROR: " + s);
             if (throwable != null) {
-                throwable.printStackTrace(printer);
+                StringWriter trace = new StringWriter();
+                throwable.printStackTrace(new PrintWriter(trace));
+                append(trace.toString());
             }
             break;
         case LOG_INFO :
-            printer.println("INFO: " + s);
+            append("INFO: " + s);
             break;
         case LOG_WARNING :
-            printer.println("WARNING: " + s);
+            append("WARNING: " + s);
             break;
         default :
-            printer.println("UNKNOWN[" + level + "]: " + s);
+            append("UNKNOWN[" + level + "]: " + s);
+        }
+
+        // The resolver calls no other hook while it searches permutations
+        if (permutationFailed && progress != null)
+            progress.checkCancelled();
+    }
+
+    private synchronized void append(String line) {
+        if (spill != null) {
+            try {
+                spill.write(line);
+                spill.write('\n');
+            } catch (IOException e) {
+                closeSpill();
+            }
         }
+
+        lines.addLast(line);
+        chars += line.length() + 1;
+        while (chars > maxChars && lines.size() > 1) {
+            chars -= lines.removeFirst().length() + 1;
+            droppedLines++;
+        }
+    }
+
+    /**
+     * Check for cancellation whenever the resolver abandons a candidate permutation.
+     */
+    void setProgress(ResolveProgress progress) {
+        this.progress = progress;
     }
 
-    String getLog() {
-        return writer.toString();
+    /**
+     * Flush and close the log file, if any. Messages logged afterwards are only kept in memory.
+     */
+    synchronized void close() {
+        closeSpill();
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            spill = null;
+        }
+    }
+
+    File getLogFile() {
+        return spillFile;
+    }
+
+    synchronized String getLog() {
+        StringBuilder builder = new StringBuilder(chars + 128);
+        if (droppedLines > 0) {
+            builder.append("[").append(droppedLines).append(" earlier lines omitted");
+            if (spillFile != null)
+                builder.append("; full log in ").append(spillFile.getAbsolutePath());
+            builder.append("]\n");
+        }
+        for (String line : lines)
+            builder.append(line).append('\n');
+        return builder.toString();
     }
 
 }
@@ -0,0 +1,26 @@
+package org.bndtools.core.resolve;
+
+import java.util.List;
+import java.util.Set;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+
+import biz.aQute.resolve.ResolutionCallback;
+
+/**
+ * Records the number of candidates offered for each requirement.
+ */
+class StatisticsCallback implements ResolutionCallback {
+
+    private final ResolutionStatistics statistics;
+
+    StatisticsCallback(ResolutionStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void processCandidates(Requirement requirement, Set<Capability> wired, List<Capability> candidates) {
+        statistics.recordCandidates(requirement.toString(), candidates.size());
+    }
+
+}
@@ -5,10 +5,14 @@ import java.beans.PropertyChangeSupport;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Formatter;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.bndtools.core.resolve.ResolutionResult;
+import org.bndtools.core.resolve.ResolutionStatistics;
+import org.bndtools.core.resolve.ResolutionStatistics.RepositoryStatistics;
 import org.bndtools.core.resolve.ResolveOperation;
 import org.bndtools.core.ui.SashFormPanelMaximiser;
 import org.bndtools.utils.resources.ResourceUtils;
@@ -78,6 +82,7 @@ public class ResolutionResultsWizardPage extends WizardPage {
     private TabItem tbtmResults;
     private TabItem tbtmErrors;
     private TabItem tbtmLog;
+    private TabItem tbtmStatistics;
 
     private SashFormPanelMaximiser requiredMaximiser;
     private TableViewer requiredViewer;
@@ -87,6 +92,7 @@ public class ResolutionResultsWizardPage extends WizardPage {
     private final ResolutionTreeContentProvider reasonsContentProvider = new ResolutionTreeContentProvider();
     private Button btnAddResolveOptional;
     private Text txtLog;
+    private Text txtStatistics;
 
     private ResolutionResult result;
 
@@ -130,6 +136,10 @@ public class ResolutionResultsWizardPage extends WizardPage {
         tbtmLog.setText("Log");
         tbtmLog.setControl(createLogTabControl(tabFolder));
 
+        tbtmStatistics = new TabItem(tabFolder, SWT.NONE);
+        tbtmStatistics.setText("Statistics");
+        tbtmStatistics.setControl(createStatisticsTabControl(tabFolder));
+
         updateUi();
     }
 
@@ -275,6 +285,12 @@ public class ResolutionResultsWizardPage extends WizardPage {
         return txtLog;
     }
 
+    private Control createStatisticsTabControl(Composite parent) {
+        txtStatistics = new Text(parent, SWT.BORDER | SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL | SWT.READ_ONLY);
+        txtStatistics.setFont(JFaceResources.getTextFont());
+        return txtStatistics;
+    }
+
     public ResolutionResult getResult() {
         return result;
     }
@@ -341,9 +357,12 @@ public class ResolutionResultsWizardPage extends WizardPage {
         //        optionalViewer.setInput(result != null ? result.getResolve().getOptionalResources() : null);
         resolutionFailurePanel.setInput(result);
 
-        String log = result.getLog();
+        String log = result != null ? result.getLog() : null;
         txtLog.setText(log != null ? log : "<<UNAVAILABLE>>");
 
+        ResolutionStatistics statistics = result != null ? result.getStatistics() : null;
+        txtStatistics.setText(statistics != null ? formatStatistics(statistics) : "<<UNAVAILABLE>>");
+
         boolean resolved = result != null && result.getOutcome().equals(ResolutionResult.Outcome.Resolved);
         // && (result.getStatus() == null || result.getStatus().getSeverity() < IStatus.ERROR);
 
@@ -364,6 +383,28 @@ public class ResolutionResultsWizardPage extends WizardPage {
         setErrorMessage(error);
     }
 
+    private static String formatStatistics(ResolutionStatistics statistics) {
+        StringBuilder builder = new StringBuilder();
+        Formatter formatter = new Formatter(builder);
+
+        formatter.format("Resolve time:              %d ms%n", statistics.getResolveTimeMillis());
+        formatter.format("Requirements processed:    %d%n", statistics.getRequirementsProcessed());
+        formatter.format("Total candidates:          %d%n", statistics.getTotalCandidates());
+        formatter.format("Failed permutations:       %d%n", statistics.getFailedPermutations());
+
+        formatter.format("%nRepositories:%n");
+        formatter.format("  %-40s %8s %12s %12s %10s%n", "Name", "Calls", "Requirements", "Capabilities", "Time (ms)");
+        for (RepositoryStatistics repo : statistics.getRepositories())
+            formatter.format("  %-40s %8d %12d %12d %10d%n", repo.getName(), repo.getCalls(), repo.getRequirements(), repo.getCapabilities(), repo.getTimeMillis());
+
+        formatter.format("%nRequirements with most candidates:%n");
+        for (Entry<String,Integer> entry : statistics.getTopRequirements(10))
+            formatter.format("  %6d  %s%n", entry.getValue(), entry.getKey());
+
+        formatter.flush();
+        return builder.toString();
+    }
+
     @Override
     public boolean isPageComplete() {
         return result != null && result.getOutcome().equals(ResolutionResult.Outcome.Resolved) && checkedOptional.isEmpty();
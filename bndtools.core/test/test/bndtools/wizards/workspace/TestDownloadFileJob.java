@@ -0,0 +1,98 @@
+package test.bndtools.wizards.workspace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IStatus;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import bndtools.wizards.workspace.DownloadFileJob;
+
+public class TestDownloadFileJob extends TestCase {
+
+    private File dir = new File("generated/test-download-tmp");
+    private File source = new File(dir, "source.jar");
+    private byte[] content;
+
+    @Override
+    protected void setUp() throws Exception {
+        IO.delete(dir);
+        dir.mkdirs();
+
+        // More than one buffer, so the content is streamed in several reads
+        content = new byte[200 * 1024 + 17];
+        for (int i = 0; i < content.length; i++)
+            content[i] = (byte) (i * 31);
+        OutputStream out = new FileOutputStream(source);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IO.delete(dir);
+    }
+
+    public void testDownload() throws Exception {
+        DownloadFileJob job = download(-1);
+        File file = job.getFile();
+        try {
+            assertEquals(IStatus.OK, job.getResult().getSeverity());
+            assertNotNull(file);
+            ByteArrayOutputStream downloaded = new ByteArrayOutputStream();
+            IO.copy(file, downloaded);
+            assertTrue(Arrays.equals(content, downloaded.toByteArray()));
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            assertEquals(Hex.toHexString(digest.digest(content)), job.getSHA1());
+        } finally {
+            if (file != null)
+                file.delete();
+        }
+    }
+
+    public void testDownloadMissingFile() throws Exception {
+        source.delete();
+        DownloadFileJob job = download(-1);
+        assertEquals(IStatus.ERROR, job.getResult().getSeverity());
+        assertNull(job.getFile());
+        assertNull(job.getSHA1());
+    }
+
+    public void testDownloadExceedsMaxSize() throws Exception {
+        DownloadFileJob job = download(content.length - 1);
+        assertEquals(IStatus.ERROR, job.getResult().getSeverity());
+        assertNull(job.getFile());
+    }
+
+    public void testDownloadMaxSize() throws Exception {
+        DownloadFileJob job = download(content.length);
+        File file = job.getFile();
+        try {
+            assertEquals(IStatus.OK, job.getResult().getSeverity());
+            assertEquals(content.length, file.length());
+        } finally {
+            if (file != null)
+                file.delete();
+        }
+    }
+
+    private DownloadFileJob download(long maxSize) throws Exception {
+        DownloadFileJob job = new DownloadFileJob(source.toURI().toURL());
+        if (maxSize >= 0)
+            job.setMaxSize(maxSize);
+        job.schedule();
+        job.join();
+        return job;
+    }
+}
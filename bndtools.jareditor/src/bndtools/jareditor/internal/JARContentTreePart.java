@@ -14,11 +14,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.core.runtime.IStatus;
@@ -181,7 +176,7 @@ public class JARContentTreePart extends AbstractFormPart {
 
     private class JARTreeContentProvider implements ITreeContentProvider {
 
-        Map<String,ZipTreeNode> entryMap;
+        ZipTreeNode root;
 
         public JARTreeContentProvider() {
             super();
@@ -193,7 +188,8 @@ public class JARContentTreePart extends AbstractFormPart {
         }
 
         public Object getParent(Object element) {
-            return ((ZipTreeNode) element).getParent();
+            ZipTreeNode parent = ((ZipTreeNode) element).getParent();
+            return parent == root ? null : parent;
         }
 
         public boolean hasChildren(Object element) {
@@ -201,13 +197,13 @@ public class JARContentTreePart extends AbstractFormPart {
         }
 
         public Object[] getElements(Object inputElement) {
-            return entryMap.values().toArray();
+            return root != null ? root.getChildren().toArray() : new Object[0];
         }
 
         public void dispose() {}
 
         public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
-            entryMap = new TreeMap<String,ZipTreeNode>();
+            root = null;
             URI uri = null;
             if (newInput instanceof IFileEditorInput) {
                 uri = ((IFileEditorInput) newInput).getFile().getLocationURI();
@@ -216,39 +212,25 @@ public class JARContentTreePart extends AbstractFormPart {
             }
 
             if (uri != null) {
-                JarFile jarFile = null;
                 try {
+                    // Only the central directory is read; the tree is built as it is expanded
                     File ioFile = new File(uri);
-                    jarFile = new JarFile(ioFile);
-
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    while (entries.hasMoreElements()) {
-                        ZipTreeNode.addEntry(entryMap, entries.nextElement());
-                    }
+                    root = ZipTreeNode.createRoot(ZipIndex.read(ioFile));
                 } catch (IOException e) {
                     Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
                     ErrorDialog.openError(managedForm.getForm().getShell(), "Error", null, status);
-                } finally {
-                    try {
-                        if (jarFile != null) {
-                            jarFile.close();
-                        }
-                    } catch (IOException e) {}
                 }
             }
         }
 
         public TreePath findPath(String[] path) {
-            if (path == null || path.length == 0)
+            if (root == null || path == null || path.length == 0)
                 return null;
 
             TreePath result = TreePath.EMPTY;
-            ZipTreeNode current = entryMap.get(path[0]);
-            if (current == null)
-                return null;
-            result = result.createChildPath(current);
+            ZipTreeNode current = root;
 
-            segments: for (int i = 1; i < path.length; i++) {
+            segments: for (int i = 0; i < path.length; i++) {
                 Collection<ZipTreeNode> children = current.getChildren();
                 for (ZipTreeNode child : children) {
                     if (path[i].equals(child.toString())) {
@@ -2,7 +2,6 @@ package bndtools.jareditor.internal;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URI;
@@ -15,7 +14,6 @@ import java.util.zip.ZipFile;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.resource.FontDescriptor;
 import org.eclipse.jface.resource.JFaceResources;
@@ -33,6 +31,8 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Spinner;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorPart;
@@ -53,9 +53,17 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
     private final IEditorPart editor;
 
     private Text text;
+    private Spinner pageSpinner;
+    private Label pageLabel;
     protected ZipEntry zipEntry = null;
+    protected long selectedPage = 0;
     private Job displayJob = null;
 
+    // One handle on the JAR for the editor, opened on first use and closed when the part is refreshed or disposed
+    private URI zipUri = null;
+    private ZipFile zipFile = null;
+    private ZipEntryPager pager = null;
+
     protected boolean showAsText = true;
     protected final String[] charsets;
     protected int selectedCharset;
@@ -79,6 +87,12 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         textSection.setText("Entry Content");
         Composite textComposite = toolkit.createComposite(textSection);
         text = toolkit.createText(textComposite, "", SWT.MULTI | SWT.V_SCROLL | SWT.H_SCROLL | SWT.READ_ONLY);
+        Composite pagePanel = toolkit.createComposite(textComposite);
+        toolkit.createLabel(pagePanel, "Page:");
+        pageSpinner = new Spinner(pagePanel, SWT.BORDER);
+        pageSpinner.setMinimum(1);
+        pageSpinner.setEnabled(false);
+        pageLabel = toolkit.createLabel(pagePanel, "");
         textSection.setClient(textComposite);
 
         Section encodingSection = toolkit.createSection(parent, Section.TITLE_BAR | Section.EXPANDED);
@@ -122,6 +136,16 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
                 loadContent();
             }
         });
+        pageSpinner.addSelectionListener(new SelectionAdapter() {
+            @Override
+            public void widgetSelected(SelectionEvent e) {
+                long page = pageSpinner.getSelection() - 1;
+                if (page != selectedPage) {
+                    selectedPage = page;
+                    loadContent();
+                }
+            }
+        });
 
         // LAYOUT
         GridLayout layout;
@@ -139,6 +163,14 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         gd = new GridData(SWT.FILL, SWT.FILL, true, true);
         text.setLayoutData(gd);
 
+        gd = new GridData(SWT.FILL, SWT.FILL, true, false);
+        pagePanel.setLayoutData(gd);
+        layout = new GridLayout(3, false);
+        layout.marginWidth = 0;
+        layout.marginHeight = 0;
+        pagePanel.setLayout(layout);
+        pageLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+
         gd = new GridData(SWT.FILL, SWT.FILL, true, false);
         encodingSection.setLayoutData(gd);
         encodingSection.setLayout(new FillLayout());
@@ -160,9 +192,31 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         } else {
             this.zipEntry = null;
         }
+        selectedPage = 0;
         loadContent();
     }
 
+    @Override
+    public boolean isStale() {
+        // Claim to always be stale, so we always get refresh events.
+        return true;
+    }
+
+    @Override
+    public void refresh() {
+        super.refresh();
+        // The JAR may have changed on disk; it is opened again when the selection is reloaded
+        cancelDisplayJob();
+        closeZipFile();
+    }
+
+    @Override
+    public void dispose() {
+        cancelDisplayJob();
+        closeZipFile();
+        super.dispose();
+    }
+
     private final void setSelectedCharset(String selectedCharsetName) {
         for (int i = 0; i < charsets.length; i++) {
             if (charsets[i].equals(selectedCharsetName)) {
@@ -174,8 +228,7 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
     }
 
     protected void loadContent() {
-        if (displayJob != null && displayJob.getState() != Job.NONE)
-            displayJob.cancel();
+        cancelDisplayJob();
 
         if (zipEntry != null && !zipEntry.isDirectory()) {
             IEditorInput input = editor.getEditorInput();
@@ -191,22 +244,32 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             }
 
             if (uri != null) {
+                final ZipEntry entry = zipEntry;
+                final long page = selectedPage;
+                final boolean asText = showAsText;
+                final String charset = charsets[selectedCharset];
                 displayJob = new Job("Load zip content") {
                     @Override
                     protected IStatus run(IProgressMonitor monitor) {
-                        File ioFile = new File(uri);
-                        ZipFile zipFile = null;
                         try {
-                            zipFile = new ZipFile(ioFile);
+                            ZipEntryPager entryPager = getPager(uri, entry);
+                            final long pageCount = entryPager.getPageCount();
+                            final long shownPage = Math.min(page, pageCount - 1);
+                            byte[] data = entryPager.getPage(shownPage, monitor);
+                            if (data == null || monitor.isCanceled())
+                                return Status.CANCEL_STATUS;
+
                             final StringWriter writer = new StringWriter();
-                            if (showAsText)
-                                readAsText(zipFile, zipEntry, charsets[selectedCharset], writer, 1024 * 20, monitor);
+                            if (asText)
+                                writeAsText(data, charset, writer);
                             else
-                                readAsHex(zipFile, zipEntry, writer, 1024 * 20, 2, monitor);
+                                writeAsHex(data, shownPage * ZipEntryPager.PAGE_SIZE, writer, 2);
 
+                            final long size = entryPager.getEntry().getSize();
                             display.asyncExec(new Runnable() {
                                 public void run() {
                                     setContent(writer.toString());
+                                    setPage(shownPage, pageCount, size);
                                 }
                             });
 
@@ -215,14 +278,6 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
                             Status status = new Status(IStatus.ERROR, PluginConstants.PLUGIN_ID, 0, "I/O error reading JAR file contents", e);
                             // ErrorDialog.openError(getManagedForm().getForm().getShell(), "Error", null, status);
                             return status;
-                        } finally {
-                            try {
-                                if (zipFile != null)
-                                    zipFile.close();
-                            } catch (IOException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
                         }
                     }
                 };
@@ -230,6 +285,60 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             }
         } else {
             setContent("");
+            setPage(0, 0, -1);
+        }
+    }
+
+    /**
+     * Cancels the display job and waits for it to stop reading, so that the pager and the JAR it reads can be replaced
+     * or closed. The job checks for cancellation between reads, so this does not wait for more than one read.
+     */
+    private void cancelDisplayJob() {
+        if (displayJob == null)
+            return;
+        displayJob.cancel();
+        try {
+            displayJob.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        displayJob = null;
+    }
+
+    /**
+     * Returns the pager of the entry, opening the JAR if it is not open yet.
+     */
+    private synchronized ZipEntryPager getPager(URI uri, ZipEntry entry) throws IOException {
+        if (zipFile == null || !uri.equals(zipUri)) {
+            closeZipFile();
+            zipFile = new ZipFile(new File(uri));
+            zipUri = uri;
+        }
+        if (pager == null || !pager.getEntry().getName().equals(entry.getName())) {
+            if (pager != null)
+                pager.close();
+            // Use the entry of the JAR itself, which has the actual size and compression method
+            ZipEntry zipFileEntry = zipFile.getEntry(entry.getName());
+            if (zipFileEntry == null)
+                throw new IOException("Entry not found: " + entry.getName());
+            pager = new ZipEntryPager(zipFile, zipFileEntry);
+        }
+        return pager;
+    }
+
+    private synchronized void closeZipFile() {
+        if (pager != null) {
+            pager.close();
+            pager = null;
+        }
+        if (zipFile != null) {
+            try {
+                zipFile.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            zipFile = null;
+            zipUri = null;
         }
     }
 
@@ -238,54 +347,32 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
             text.setText(content);
     }
 
+    protected void setPage(long page, long pageCount, long size) {
+        if (pageSpinner == null || pageSpinner.isDisposed())
+            return;
+
+        int count = (int) Math.max(1, Math.min(pageCount, Integer.MAX_VALUE));
+        pageSpinner.setMaximum(count);
+        pageSpinner.setSelection((int) Math.min(page + 1, count));
+        pageSpinner.setEnabled(count > 1);
+        selectedPage = page;
+
+        if (size >= 0)
+            pageLabel.setText(String.format("of %,d (%,d bytes)", pageCount, size));
+        else
+            pageLabel.setText("");
+        pageLabel.getParent().layout();
+    }
+
     private static final String pseudo[] = {
             "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f"
     };
 
-    private static SubMonitor createProgressMonitor(ZipEntry entry, long limit, IProgressMonitor monitor) {
-        SubMonitor progress;
-        long size = entry.getSize();
-        if (size == -1) {
-            progress = SubMonitor.convert(monitor);
-        } else {
-            long ticks = (limit == -1) ? size : Math.min(size, limit);
-            progress = SubMonitor.convert(monitor, (int) ticks);
-        }
-        return progress;
-    }
-
-    protected static void readAsText(ZipFile zipFile, ZipEntry entry, String encoding, Writer out, long limit, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
-
-        boolean limitReached = false;
-        InputStream stream = zipFile.getInputStream(entry);
-        try {
-            long total = 0;
-
-            byte[] buffer = new byte[1024];
-            while (true) {
-                if (progress.isCanceled())
-                    return;
-                int bytesRead = stream.read(buffer, 0, 1024);
-                if (bytesRead < 0)
-                    break;
-                String string = new String(buffer, 0, bytesRead, encoding);
-                out.write(string);
-
-                total += bytesRead;
-                progress.worked(bytesRead);
-                if (limit >= 0 && total >= limit) {
-                    limitReached = true;
-                    return;
-                }
-            }
-        } finally {
-            if (limitReached) {
-                out.write("\nLimit of " + (limit >> 10) + "Kb reached, the rest of the entry is not shown.");
-            }
-
-            stream.close();
-        }
+    /**
+     * Write a page as text. A character that is split across pages is shown as a replacement character.
+     */
+    protected static void writeAsText(byte[] data, String encoding, Writer out) throws IOException {
+        out.write(new String(data, encoding));
     }
 
     private static char byteToChar(byte b) {
@@ -296,86 +383,59 @@ public class JAREntryPart extends AbstractFormPart implements IPartSelectionList
         return (char) b;
     }
 
-    protected static void readAsHex(ZipFile zipFile, ZipEntry entry, Writer out, long limit, int groupsOf8BytesPerLine, IProgressMonitor monitor) throws IOException {
-        SubMonitor progress = createProgressMonitor(entry, limit, monitor);
-
-        boolean limitReached = false;
-        long offsetInFile = 0;
+    /**
+     * Write a page as a hex dump, with the offsets of the lines in the entry counting from the given offset of the page.
+     */
+    protected static void writeAsHex(byte[] data, long offset, Writer out, int groupsOf8BytesPerLine) throws IOException {
+        long offsetInFile = offset;
         int bytesPerLine = groupsOf8BytesPerLine * 8;
         int asciiPosition = 0;
         char[] asciiBuffer = new char[bytesPerLine + (2 * (groupsOf8BytesPerLine - 1))];
         int bytePosition = 0;
-        byte[] buffer = new byte[1024];
 
-        InputStream stream = zipFile.getInputStream(entry);
-        try {
-            long total = 0;
-
-            while (true) {
-                if (progress.isCanceled())
-                    return;
-                int bytesRead = stream.read(buffer, 0, 1024);
-                if (bytesRead < 0)
-                    break;
-
-                for (int i = 0; i < bytesRead; i++) {
-                    if (bytePosition == 0) {
-                        String s = String.format("0x%04x ", offsetInFile);
-                        out.write(s);
-                        offsetInFile += bytesPerLine;
-                    }
+        for (int i = 0; i < data.length; i++) {
+            if (bytePosition == 0) {
+                String s = String.format("0x%04x ", offsetInFile);
+                out.write(s);
+                offsetInFile += bytesPerLine;
+            }
 
-                    asciiBuffer[asciiPosition] = byteToChar(buffer[i]);
-                    asciiPosition++;
+            asciiBuffer[asciiPosition] = byteToChar(data[i]);
+            asciiPosition++;
+
+            out.write(pseudo[(data[i] & 0xf0) >>> 4]); // Convert to a string character
+            out.write(pseudo[(data[i] & 0x0f)]); // convert the nibble to a String Character
+            out.write(' ');
+            bytePosition++;
+
+            /* do a linebreak after the required number of bytes */
+            if (bytePosition >= bytesPerLine) {
+                out.write(' ');
+                out.write(asciiBuffer);
+                out.write('\n');
+                asciiPosition = 0;
+                bytePosition = 0;
+            }
 
-                    out.write(pseudo[(buffer[i] & 0xf0) >>> 4]); // Convert to a string character
-                    out.write(pseudo[(buffer[i] & 0x0f)]); // convert the nibble to a String Character
-                    out.write(' ');
-                    bytePosition++;
-
-                    /* do a linebreak after the required number of bytes */
-                    if (bytePosition >= bytesPerLine) {
-                        out.write(' ');
-                        out.write(asciiBuffer);
-                        out.write('\n');
-                        asciiPosition = 0;
-                        bytePosition = 0;
-                    }
+            /* put 2 extra spaces between bytes */
+            if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
+                asciiBuffer[asciiPosition++] = ' ';
+                asciiBuffer[asciiPosition++] = ' ';
+                out.write(' ');
+            }
+        }
 
-                    /* put 2 extra spaces between bytes */
-                    if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
-                        asciiBuffer[asciiPosition++] = ' ';
-                        asciiBuffer[asciiPosition++] = ' ';
-                        out.write(' ');
-                    }
-                }
+        if (bytePosition > 0) {
+            while (bytePosition < bytesPerLine) {
+                out.write("   ");
+                bytePosition++;
 
-                total += bytesRead;
-                progress.worked(bytesRead);
-                if (limit >= 0 && total >= limit) {
-                    limitReached = true;
-                    return;
-                }
-            }
-        } finally {
-            if (bytePosition > 0) {
-                while (bytePosition < bytesPerLine) {
-                    out.write("   ");
-                    bytePosition++;
-
-                    /* put 2 extra spaces between bytes */
-                    if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
-                        out.write(' ');
-                    }
+                /* put 2 extra spaces between bytes */
+                if ((bytePosition > 0) && (bytePosition % 8 == 0)) {
+                    out.write(' ');
                 }
-                out.write(asciiBuffer, 0, asciiPosition);
             }
-
-            if (limitReached) {
-                out.write("\nLimit of " + (limit >> 10) + "Kb reached, the rest of the entry is not shown.");
-            }
-
-            stream.close();
+            out.write(asciiBuffer, 0, asciiPosition);
         }
     }
 }
@@ -0,0 +1,118 @@
+package bndtools.jareditor.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+/**
+ * Reads the content of a ZIP entry in fixed size pages, so that an entry of any size can be shown with constant memory.
+ * A bounded number of the most recently read pages is cached.
+ * <p>
+ * The entry is read with a stream that is kept open between pages, so paging forwards through a compressed entry
+ * inflates each byte once. Only paging backwards beyond the cache has to inflate the entry again from the start. A
+ * STORED entry is not inflated at all, and skipping within it is done without reading the skipped bytes, so any page of
+ * it is read directly.
+ */
+class ZipEntryPager {
+
+    static final int PAGE_SIZE = 1024 * 20;
+    private static final int MAX_CACHED_PAGES = 8;
+
+    private final ZipFile zipFile;
+    private final ZipEntry entry;
+    private final Map<Long,byte[]> cache = new LinkedHashMap<Long,byte[]>(MAX_CACHED_PAGES * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,byte[]> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    private InputStream stream = null;
+    private long position = 0;
+
+    ZipEntryPager(ZipFile zipFile, ZipEntry entry) {
+        this.zipFile = zipFile;
+        this.entry = entry;
+    }
+
+    ZipEntry getEntry() {
+        return entry;
+    }
+
+    long getPageCount() {
+        long size = entry.getSize();
+        return size <= 0 ? 1 : (size + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Returns the content of the page, which is shorter than {@link #PAGE_SIZE} only for the last page of the entry.
+     * Returns null if the monitor was cancelled.
+     */
+    synchronized byte[] getPage(long page, IProgressMonitor monitor) throws IOException {
+        byte[] data = cache.get(page);
+        if (data != null)
+            return data;
+
+        long offset = page * PAGE_SIZE;
+        if (stream == null || position > offset) {
+            close();
+            stream = zipFile.getInputStream(entry);
+            if (stream == null)
+                throw new IOException("Entry not found: " + entry.getName());
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, (int) ((offset - position) / PAGE_SIZE) + 1);
+        while (position < offset) {
+            if (progress.isCanceled())
+                return null;
+            long skipped = stream.skip(Math.min(offset - position, PAGE_SIZE));
+            if (skipped <= 0)
+                break;
+            position += skipped;
+            if (entry.getMethod() != ZipEntry.STORED)
+                progress.worked(1);
+        }
+
+        byte[] buffer = new byte[PAGE_SIZE];
+        int length = 0;
+        while (length < PAGE_SIZE) {
+            if (progress.isCanceled())
+                return null;
+            int bytesRead = stream.read(buffer, length, PAGE_SIZE - length);
+            if (bytesRead < 0)
+                break;
+            length += bytesRead;
+            position += bytesRead;
+        }
+        progress.worked(1);
+
+        if (length < PAGE_SIZE) {
+            data = new byte[length];
+            System.arraycopy(buffer, 0, data, 0, length);
+        } else {
+            data = buffer;
+        }
+        cache.put(page, data);
+        return data;
+    }
+
+    synchronized void close() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            stream = null;
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Neil Bartlett.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Neil Bartlett - initial API and implementation
+ *******************************************************************************/
+package bndtools.jareditor.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A compact index of the entries of a ZIP file, read in one pass from its central directory without reading or
+ * inflating any entry. The entries are sorted by name and their attributes are held in parallel arrays, so that the
+ * entries of a directory form a contiguous range of the index and can be found by binary search. ZIP64 archives are
+ * supported.
+ */
+class ZipIndex {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_EOCD_LENGTH = 56;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    private final String[] names;
+    private final long[] sizes;
+    private final long[] compressedSizes;
+    private final int[] crcs;
+    private final int[] dosTimes;
+    private final short[] methods;
+
+    private ZipIndex(int count) {
+        names = new String[count];
+        sizes = new long[count];
+        compressedSizes = new long[count];
+        crcs = new int[count];
+        dosTimes = new int[count];
+        methods = new short[count];
+    }
+
+    static ZipIndex read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return read(raf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ZipIndex read(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+
+        // The end of central directory record is followed only by the archive comment
+        int tailLength = (int) Math.min(length, EOCD_LENGTH + MAX_COMMENT_LENGTH);
+        byte[] tail = new byte[tailLength];
+        raf.seek(length - tailLength);
+        raf.readFully(tail);
+
+        int eocd = -1;
+        for (int i = tailLength - EOCD_LENGTH; i >= 0; i--) {
+            if (getInt(tail, i) == EOCD_SIGNATURE && i + EOCD_LENGTH + getShort(tail, i + 20) <= tailLength) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0)
+            throw new ZipException("Not a ZIP file: end of central directory not found");
+        long eocdPosition = length - tailLength + eocd;
+
+        long count = getShort(tail, eocd + 10);
+        long cdSize = getUnsignedInt(tail, eocd + 12);
+        long cdOffset = getUnsignedInt(tail, eocd + 16);
+        long cdEnd = eocdPosition;
+
+        if (count == 0xffff || cdSize == 0xffffffffL || cdOffset == 0xffffffffL) {
+            long locatorPosition = eocdPosition - ZIP64_EOCD_LOCATOR_LENGTH;
+            if (locatorPosition >= 0) {
+                byte[] locator = new byte[ZIP64_EOCD_LOCATOR_LENGTH];
+                raf.seek(locatorPosition);
+                raf.readFully(locator);
+                if (getInt(locator, 0) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                    long zip64EocdPosition = getLong(locator, 8);
+                    byte[] zip64Eocd = new byte[ZIP64_EOCD_LENGTH];
+                    raf.seek(zip64EocdPosition);
+                    raf.readFully(zip64Eocd);
+                    if (getInt(zip64Eocd, 0) != ZIP64_EOCD_SIGNATURE)
+                        throw new ZipException("Invalid ZIP64 end of central directory");
+                    count = getLong(zip64Eocd, 32);
+                    cdSize = getLong(zip64Eocd, 40);
+                    cdOffset = getLong(zip64Eocd, 48);
+                    cdEnd = zip64EocdPosition;
+                }
+            }
+        }
+
+        // Offsets are relative to the start of the archive, which may be preceded by other data, e.g. a launcher
+        long base = cdEnd - cdSize - cdOffset;
+        if (base < 0 || count < 0 || count > Integer.MAX_VALUE || cdSize > Integer.MAX_VALUE)
+            throw new ZipException("Invalid end of central directory");
+
+        byte[] cd = new byte[(int) cdSize];
+        raf.seek(base + cdOffset);
+        raf.readFully(cd);
+
+        ZipIndex unsorted = new ZipIndex((int) count);
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_HEADER_LENGTH > cd.length || getInt(cd, pos) != CENTRAL_HEADER_SIGNATURE)
+                throw new ZipException("Invalid central directory header of entry " + i);
+
+            int nameLength = getShort(cd, pos + 28);
+            int extraLength = getShort(cd, pos + 30);
+            int commentLength = getShort(cd, pos + 32);
+            if (pos + CENTRAL_HEADER_LENGTH + nameLength + extraLength > cd.length)
+                throw new ZipException("Invalid central directory header of entry " + i);
+
+            // Names are decoded as UTF-8 whether flagged or not, as java.util.zip does
+            unsorted.names[i] = new String(cd, pos + CENTRAL_HEADER_LENGTH, nameLength, "UTF-8");
+            unsorted.methods[i] = (short) getShort(cd, pos + 10);
+            unsorted.dosTimes[i] = getInt(cd, pos + 12);
+            unsorted.crcs[i] = getInt(cd, pos + 16);
+
+            long compressedSize = getUnsignedInt(cd, pos + 20);
+            long size = getUnsignedInt(cd, pos + 24);
+
+            // The ZIP64 extra field holds the sizes that do not fit, in this order, followed by the header offset
+            int extra = pos + CENTRAL_HEADER_LENGTH + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = getShort(cd, extra);
+                int dataLength = getShort(cd, extra + 2);
+                int data = extra + 4;
+                if (id == ZIP64_EXTRA_ID) {
+                    int dataEnd = Math.min(data + dataLength, extraEnd);
+                    if (size == 0xffffffffL && data + 8 <= dataEnd) {
+                        size = getLong(cd, data);
+                        data += 8;
+                    }
+                    if (compressedSize == 0xffffffffL && data + 8 <= dataEnd) {
+                        compressedSize = getLong(cd, data);
+                    }
+                    break;
+                }
+                extra = data + dataLength;
+            }
+
+            unsorted.sizes[i] = size;
+            unsorted.compressedSizes[i] = compressedSize;
+
+            pos += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+
+        return unsorted.sorted();
+    }
+
+    private ZipIndex sorted() {
+        Integer[] order = new Integer[names.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return names[i1].compareTo(names[i2]);
+            }
+        });
+
+        ZipIndex sorted = new ZipIndex(names.length);
+        for (int i = 0; i < order.length; i++) {
+            int from = order[i];
+            sorted.names[i] = names[from];
+            sorted.sizes[i] = sizes[from];
+            sorted.compressedSizes[i] = compressedSizes[from];
+            sorted.crcs[i] = crcs[from];
+            sorted.dosTimes[i] = dosTimes[from];
+            sorted.methods[i] = methods[from];
+        }
+        return sorted;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int index) {
+        return names[index];
+    }
+
+    long getCrc(int index) {
+        return crcs[index] & 0xffffffffL;
+    }
+
+    /**
+     * Returns the end of the range of entries, from the given index, whose names start with the given prefix.
+     */
+    int prefixEnd(String prefix, int from) {
+        int low = from;
+        int high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (names[mid].startsWith(prefix))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Creates a {@link ZipEntry} describing the entry, which can be used with a {@link java.util.zip.ZipFile} of the
+     * same file.
+     */
+    ZipEntry createEntry(int index) {
+        ZipEntry entry = new ZipEntry(names[index]);
+        entry.setMethod(methods[index]);
+        // Before Java 7 a ZipEntry cannot hold a ZIP64 size, which is then left unknown
+        if (sizes[index] >= 0 && sizes[index] <= 0xffffffffL)
+            entry.setSize(sizes[index]);
+        entry.setCompressedSize(compressedSizes[index]);
+        entry.setCrc(getCrc(index));
+        entry.setTime(dosToJavaTime(dosTimes[index]));
+        return entry;
+    }
+
+    private static long dosToJavaTime(int dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7f) + 1980, ((dosTime >> 21) & 0x0f) - 1, (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f, (dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+        return calendar.getTimeInMillis();
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return getShort(b, off) | (getShort(b, off + 2) << 16);
+    }
+
+    private static long getUnsignedInt(byte[] b, int off) {
+        return getInt(b, off) & 0xffffffffL;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return getUnsignedInt(b, off) | (getUnsignedInt(b, off + 4) << 32);
+    }
+}
@@ -10,28 +10,52 @@
  *******************************************************************************/
 package bndtools.jareditor.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.zip.ZipEntry;
 
 import org.eclipse.core.runtime.IAdaptable;
 
+/**
+ * A node of the content tree of a JAR, over a range of a {@link ZipIndex}. The node holds only its own name segment
+ * and the range of entries below it; the names themselves are shared with the index. The children of a directory are
+ * created when they are first asked for, so only the expanded part of the tree is ever built.
+ */
 class ZipTreeNode implements IAdaptable {
 
     private final ZipTreeNode parent;
+    private final ZipIndex index;
     private final String name;
-    private final ZipEntry entry;
-    private final Map<String,ZipTreeNode> children = new LinkedHashMap<String,ZipTreeNode>();
+    private final int prefixLength;
+    private final int from;
+    private final int to;
+    private final int entryIndex;
+    private List<ZipTreeNode> children = null;
 
-    private ZipTreeNode(ZipTreeNode parent, String name, ZipEntry entry) {
+    private ZipTreeNode(ZipTreeNode parent, ZipIndex index, String name, int prefixLength, int from, int to) {
         this.parent = parent;
+        this.index = index;
         this.name = name;
-        this.entry = entry;
+        this.prefixLength = prefixLength;
+        this.from = from;
+        this.to = to;
+
+        // A directory can have an entry of its own, which sorts before the entries below it
+        if (from < to && index.getName(from).length() == prefixLength)
+            this.entryIndex = from;
+        else
+            this.entryIndex = -1;
+    }
+
+    /**
+     * Creates the root of the tree of the given index. The root itself is not shown; its children are the top-level
+     * entries.
+     */
+    public static ZipTreeNode createRoot(ZipIndex index) {
+        return new ZipTreeNode(null, index, "", 0, 0, index.size());
     }
 
     public ZipTreeNode getParent() {
@@ -39,15 +63,40 @@ class ZipTreeNode implements IAdaptable {
     }
 
     public boolean hasChildren() {
-        return !children.isEmpty();
+        return to - from > (entryIndex < 0 ? 0 : 1);
     }
 
     public Collection<ZipTreeNode> getChildren() {
-        return Collections.unmodifiableCollection(children.values());
+        if (children == null)
+            children = createChildren();
+        return children;
+    }
+
+    private List<ZipTreeNode> createChildren() {
+        if (!hasChildren())
+            return Collections.emptyList();
+
+        List<ZipTreeNode> result = new ArrayList<ZipTreeNode>();
+        int i = entryIndex < 0 ? from : from + 1;
+        while (i < to) {
+            String entryName = index.getName(i);
+            int slash = entryName.indexOf('/', prefixLength);
+            if (slash < 0) {
+                result.add(new ZipTreeNode(this, index, entryName.substring(prefixLength), entryName.length(), i, i + 1));
+                i++;
+            } else {
+                // Skip over the whole directory, whose entries are contiguous in the sorted index
+                String childPrefix = entryName.substring(0, slash + 1);
+                int end = index.prefixEnd(childPrefix, i);
+                result.add(new ZipTreeNode(this, index, childPrefix.substring(prefixLength), childPrefix.length(), i, end));
+                i = end;
+            }
+        }
+        return Collections.unmodifiableList(result);
     }
 
     public ZipEntry getZipEntry() {
-        return entry;
+        return entryIndex < 0 ? null : index.createEntry(entryIndex);
     }
 
     @Override
@@ -56,45 +105,10 @@ class ZipTreeNode implements IAdaptable {
 
     }
 
-    public static void addEntry(Map<String,ZipTreeNode> rootMap, ZipEntry entry) {
-        List<String> path = getPath(entry);
-        pushEntry(null, rootMap, path, entry);
-    }
-
-    private static void pushEntry(ZipTreeNode parent, Map<String,ZipTreeNode> map, List<String> path, ZipEntry entry) {
-        String pathPart = path.remove(0);
-        ZipTreeNode node = map.get(pathPart);
-        if (node == null) {
-            node = new ZipTreeNode(parent, pathPart, path.isEmpty() ? entry : null);
-            map.put(pathPart, node);
-        }
-        if (!path.isEmpty())
-            pushEntry(node, node.children, path, entry);
-    }
-
-    private static List<String> getPath(ZipEntry entry) {
-        List<String> path = new LinkedList<String>();
-
-        String name = entry.getName();
-        int index = 0;
-        while (index < name.length()) {
-            int nextSlash = name.indexOf('/', index);
-
-            if (nextSlash == -1) {
-                path.add(name.substring(index));
-                break;
-            }
-            path.add(name.substring(index, nextSlash + 1));
-            index = nextSlash + 1;
-        }
-
-        return path;
-    }
-
     public Object getAdapter(@SuppressWarnings("rawtypes")
     Class adapter) {
-        if (adapter == JarEntry.class) {
-            return entry;
+        if (adapter == JarEntry.class && entryIndex >= 0) {
+            return new JarEntry(getZipEntry());
         }
         return null;
     }
@@ -77,6 +77,7 @@ public class Activator extends AbstractUIPlugin {
 	public void stop(BundleContext context) throws Exception {
 		plugin = null;
 		workspaceTracker.close();
+		BaselineCache.clear();
 		super.stop(context);
 	}
 
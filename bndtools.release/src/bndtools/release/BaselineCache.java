@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2012 Per Kr. Soreide.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Per Kr. Soreide - initial API and implementation
+ *******************************************************************************/
+package bndtools.release;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Manifest;
+
+import aQute.bnd.differ.Baseline;
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Instructions;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.service.diff.Differ;
+import aQute.bnd.service.diff.Tree;
+import aQute.lib.hex.Hex;
+import aQute.service.reporter.Reporter;
+
+/**
+ * Keeps the API trees of the last baselined JARs of each bundle, keyed by the digests of the new JAR and of the JAR
+ * it was baselined against, so that the JARs do not have to be analysed again when the release dialogs are reopened
+ * without changes.
+ * <p>
+ * Only the trees and the exported packages are kept, and only for the most recently used bundles. Every baseline
+ * created from an entry is a new {@link Baseline}, so the versions and the release repository set in the release
+ * dialog never carry over to the next one.
+ */
+class BaselineCache {
+
+	private static final int MAX_ENTRIES = 64;
+
+	private static final Map<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Entry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private BaselineCache() {}
+
+	/**
+	 * Returns the key of a baseline of two JARs: their digests, ignoring the time stamps, and their versions.
+	 */
+	static String getKey(Jar newer, Jar older) throws Exception {
+		return getKey(newer) + '|' + getKey(older);
+	}
+
+	private static String getKey(Jar jar) throws Exception {
+		String version = jar.getManifest() != null ? jar.getVersion() : null;
+		return Hex.toHexString(jar.getTimelessDigest()) + ':' + version;
+	}
+
+	static synchronized Entry get(String bsn, String key) {
+		Entry entry = entries.get(bsn);
+		if (entry == null || !entry.key.equals(key)) {
+			return null;
+		}
+		return entry;
+	}
+
+	static synchronized void put(String bsn, Entry entry) {
+		entries.put(bsn, entry);
+	}
+
+	static synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * The API trees and the exported packages of two baselined JARs.
+	 */
+	static class Entry {
+		final String key;
+		private final Tree newer;
+		private final String newerExports;
+		private final Tree older;
+		private final String olderExports;
+
+		Entry(String key, Differ differ, Jar newer, Jar older) throws Exception {
+			this.key = key;
+			this.newer = differ.tree(newer);
+			this.newerExports = getExports(newer);
+			this.older = differ.tree(older);
+			this.olderExports = getExports(older);
+		}
+
+		private static String getExports(Jar jar) throws Exception {
+			Manifest manifest = jar.getManifest();
+			return manifest != null ? manifest.getMainAttributes().getValue(Constants.EXPORT_PACKAGE) : null;
+		}
+
+		Baseline createBaseline(Reporter reporter, Differ differ) throws Exception {
+			Baseline baseline = new Baseline(reporter, differ);
+			baseline.baseline(newer, OSGiHeader.parseHeader(newerExports), older, OSGiHeader.parseHeader(olderExports), new Instructions());
+			return baseline;
+		}
+	}
+}
@@ -10,14 +10,26 @@
  *******************************************************************************/
 package bndtools.release;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.List;
 
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import aQute.bnd.build.Container;
 import aQute.bnd.build.Project;
 import aQute.bnd.build.ProjectBuilder;
 import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.DiffPluginImpl;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
+import aQute.service.reporter.Reporter;
+import bndtools.release.api.ReleaseUtils;
 
 public class DiffHelper {
 
@@ -42,16 +54,18 @@ public class DiffHelper {
 		try {
 
 			if (builder instanceof ProjectBuilder) {
-				Jar jar = builder.build();
-
-				Jar currentJar = ((ProjectBuilder) builder).getLastRevision();
-				if (currentJar == null) {
-				    currentJar = new Jar("."); //$NON-NLS-1$
+				ProjectBuilder projectBuilder = (ProjectBuilder) builder;
+				Jar jar = getBuiltJar(projectBuilder);
+				try {
+					Jar currentJar = getBaselineJar(projectBuilder);
+					try {
+						return createBaseline(projectBuilder, projectBuilder.getBsn(), jar, currentJar);
+					} finally {
+						currentJar.close();
+					}
+				} finally {
+					jar.close();
 				}
-				Baseline baseline = new Baseline(builder, new DiffPluginImpl());
-
-				baseline.baseline(jar, currentJar, null);
-				return baseline;
 			}
 		} catch (Exception e1) {
 			e1.printStackTrace();
@@ -60,6 +74,114 @@ public class DiffHelper {
 
 	}
 
+	/**
+	 * Returns the last released revision of the builder's bundle to baseline against, or an empty JAR if the bundle
+	 * has not been released. Uses the repositories of the workspace, so must be called from the thread that uses the
+	 * builder.
+	 */
+	public static Jar getBaselineJar(ProjectBuilder builder) throws Exception {
+		Jar currentJar = builder.getLastRevision();
+		if (currentJar == null) {
+		    currentJar = new Jar("."); //$NON-NLS-1$
+		}
+		return currentJar;
+	}
+
+	/**
+	 * Baselines a JAR against a previous revision of the bundle. Does not use the builder or the workspace, so
+	 * baselines of different bundles can be created concurrently, each with its own reporter. The analysis of the last
+	 * JARs of the bundle is reused if neither JAR has changed since.
+	 */
+	public static Baseline createBaseline(Reporter reporter, String bsn, Jar jar, Jar currentJar) throws Exception {
+		DiffPluginImpl differ = new DiffPluginImpl();
+		String key = BaselineCache.getKey(jar, currentJar);
+		BaselineCache.Entry entry = BaselineCache.get(bsn, key);
+		if (entry == null) {
+			entry = new BaselineCache.Entry(key, differ, jar, currentJar);
+			BaselineCache.put(bsn, entry);
+		}
+		return entry.createBaseline(reporter, differ);
+	}
+
+	/**
+	 * Returns the JAR of the builder, which the caller must close. The JAR in the project's target directory, normally
+	 * written by the bnd builder, is used when it is newer than all inputs of the build: the bnd files, the files of
+	 * the project outside the target directory and the JARs on the build path. Otherwise, or if the project has
+	 * errors, the JAR is built, so that the errors of the build are reported to the builder.
+	 */
+	public static Jar getBuiltJar(ProjectBuilder builder) throws Exception {
+		Project project = builder.getProject();
+		File target = project.getOutputFile(builder.getBsn());
+		if (target.isFile() && !hasErrors(project) && !isNewer(builder, project, target.lastModified())) {
+			// Read into memory, so that the target is not kept open, and locked on Windows, while the JAR is used
+			InputStream in = new FileInputStream(target);
+			try {
+				return new Jar(builder.getBsn(), in, target.lastModified());
+			} finally {
+				in.close();
+			}
+		}
+		return builder.build();
+	}
+
+	private static boolean hasErrors(Project project) throws CoreException {
+		if (!project.isOk()) {
+			return true;
+		}
+		IProject eProject = ReleaseUtils.getProject(project);
+		return eProject != null && eProject.isAccessible() && eProject.findMaxProblemSeverity(IMarker.PROBLEM, true, IResource.DEPTH_INFINITE) >= IMarker.SEVERITY_ERROR;
+	}
+
+	private static boolean isNewer(ProjectBuilder builder, Project project, long time) throws Exception {
+		if (isNewer(builder, time) || isNewer(project, time) || isNewer(project.getWorkspace(), time)) {
+			return true;
+		}
+		for (Container container : project.getBuildpath()) {
+			File file = container.getFile();
+			if (file != null && file.lastModified() > time) {
+				return true;
+			}
+		}
+		return isNewer(project.getBase(), project.getTarget(), time);
+	}
+
+	private static boolean isNewer(Processor processor, long time) {
+		File propertiesFile = processor.getPropertiesFile();
+		if (propertiesFile != null && propertiesFile.lastModified() > time) {
+			return true;
+		}
+		List<File> included = processor.getIncluded();
+		if (included != null) {
+			for (File file : included) {
+				if (file.lastModified() > time) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks the files of the project, i.e. sources, classes and resources, skipping the target directory and hidden
+	 * directories such as those of version control.
+	 */
+	private static boolean isNewer(File dir, File target, long time) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return false;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				if (!file.equals(target) && !file.getName().startsWith(".") && isNewer(file, target, time)) { //$NON-NLS-1$
+					return true;
+				}
+			} else if (file.lastModified() > time) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public static String removeVersionQualifier(String version) {
 		if (version == null) {
 			return null;
@@ -35,6 +35,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 
 import aQute.bnd.build.Project;
+import aQute.bnd.build.ProjectBuilder;
 import aQute.bnd.build.model.BndEditModel;
 import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.Baseline.Info;
@@ -225,7 +226,16 @@ public class ReleaseHelper {
 
 	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder) throws Exception {
 
-		Jar jar = builder.build();
+		// Unless the project has changed since it was built, e.g. by updating its versions, release the JAR as built
+		Jar jar = (builder instanceof ProjectBuilder) ? DiffHelper.getBuiltJar((ProjectBuilder) builder) : builder.build();
+		try {
+			return release(context, participants, builder, jar);
+		} finally {
+			jar.close();
+		}
+	}
+
+	private static boolean release(ReleaseContext context, List<IReleaseParticipant> participants, Builder builder, Jar jar) throws Exception {
 
 		handleBuildErrors(context, builder, jar);
 
@@ -241,13 +251,16 @@ public class ReleaseHelper {
 
 		JarResource jr = new JarResource(jar);
 		InputStream is = new BufferedInputStream(jr.openInputStream());
+		File file;
 		try {
-		    context.getProject().release(context.getReleaseRepository().getName(), jar.getName(), is);
+		    file = context.getProject().release(context.getReleaseRepository().getName(), jar.getName(), is);
 		} finally {
 		    is.close();
 		}
 
-		File file = context.getReleaseRepository().get(symbName, Version.parseVersion(version), null);
+		// Within a coordination the repository index is only updated when the coordination ends
+		if (file == null)
+			file = context.getReleaseRepository().get(symbName, Version.parseVersion(version), null);
 		Jar releasedJar = null;
 		if (file != null && file.exists()) {
 			IResource resource = ReleaseUtils.toResource(file);
@@ -263,7 +276,10 @@ public class ReleaseHelper {
 			displayErrors(context);
 			return false;
 		}
-		context.addReleasedJar(releasedJar);
+		// The released JAR is closed once the release is complete, so the context only keeps its manifest
+		Jar released = new Jar(releasedJar.getName());
+		released.setManifest(releasedJar.getManifest());
+		context.addReleasedJar(released);
 
 		postJarRelease(context, participants, releasedJar);
 		return true;
@@ -10,16 +10,33 @@
  *******************************************************************************/
 package bndtools.release;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.dialogs.MessageDialog;
@@ -28,10 +45,13 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 
 import aQute.bnd.build.Project;
+import aQute.bnd.build.ProjectBuilder;
 import aQute.bnd.build.Workspace;
 import aQute.bnd.differ.Baseline;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.diff.Delta;
 import aQute.bnd.service.diff.Diff;
 import aQute.bnd.service.diff.Type;
@@ -42,6 +62,12 @@ import bndtools.release.ui.WorkspaceReleaseDialog;
 
 public class WorkspaceAnalyserJob extends Job {
 
+	private static final long CANCEL_POLL_MILLIS = 100;
+
+	private static final Object buildOrderLock = new Object();
+	private static List<String> cachedBuildOrder = null;
+	private static Map<File,Long> cachedBuildOrderStamps = null;
+
 	protected final Shell shell;
 	protected final Set<IProject> projects;
 
@@ -63,7 +89,8 @@ public class WorkspaceAnalyserJob extends Job {
 			Collection<Project> projects = Activator.getWorkspace()
 					.getAllProjects();
 
-			mon.beginTask(Messages.workspaceReleaseJob, projects.size() * 2);
+			// Work per project: build order, build and baseline
+			mon.beginTask(Messages.workspaceReleaseJob, projects.size() * 3);
 
 			List<Project> orderedProjects = getBuildOrder(mon,
 					Activator.getWorkspace());
@@ -73,52 +100,7 @@ public class WorkspaceAnalyserJob extends Job {
 
 			final List<ProjectDiff> projectDiffs = new ArrayList<ProjectDiff>();
 			mon.setTaskName(Messages.processingProjects);
-			for (Project project : orderedProjects) {
-				IProject eProject = ReleaseUtils.getProject(project);
-                if (!isIncluded(eProject)) {
-                    mon.worked(1);
-                    continue;
-                }
-				if (eProject == null || !eProject.isOpen() || !eProject.isAccessible()) {
-	                mon.worked(1);
-					continue;
-				}
-				List<Builder> builders = project.getBuilder(null)
-						.getSubBuilders();
-				List<Baseline> jarDiffs = null;
-				for (Builder b : builders) {
-					mon.subTask(String.format(Messages.processingProject, b.getBsn()));
-
-					Baseline jarDiff = DiffHelper.createBaseline(project,
-							b.getBsn());
-					if (jarDiff != null) {
-						if (jarDiffs == null) {
-							jarDiffs = new ArrayList<Baseline>();
-						}
-
-						Delta delta = jarDiff.getDiff().getDelta(new Ignore() {
-                            public boolean contains(Diff diff) {
-                               if ("META-INF/MANIFEST.MF".equals(diff.getName())) { //$NON-NLS-1$
-                                   return true;
-                               }
-                               if (diff.getType() == Type.HEADER && diff.getName().startsWith(Constants.BUNDLE_VERSION)) {
-                                   return true;
-                               }
-                               return false;
-                            }});
-						if (delta != Delta.UNCHANGED && delta != Delta.IGNORED) {
-							jarDiffs.add(jarDiff);
-						}
-					}
-				}
-				if (jarDiffs != null && jarDiffs.size() > 0) {
-					projectDiffs.add(new ProjectDiff(project, jarDiffs));
-				}
-				if (mon.isCanceled()) {
-					return Status.CANCEL_STATUS;
-				}
-				mon.worked(1);
-			}
+			analyse(orderedProjects, projectDiffs, mon);
 
 			if (projectDiffs.size() == 0) {
 				Runnable runnable = new Runnable() {
@@ -156,6 +138,8 @@ public class WorkspaceAnalyserJob extends Job {
 				runnable.run();
 			}
 
+		} catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
 		} catch (Exception e) {
 			return new Status(IStatus.ERROR, Activator.PLUGIN_ID,
 					e.getMessage(), e);
@@ -163,39 +147,263 @@ public class WorkspaceAnalyserJob extends Job {
 		return Status.OK_STATUS;
 	}
 
-	private static List<Project> getBuildOrder(IProgressMonitor monitor,
-			Workspace workspace) throws Exception {
+	/**
+	 * Builds the projects one at a time, in build order, while the built JARs are baselined in parallel by a pool of
+	 * worker threads. The builders and the repositories are only used on this thread: the JARs to compare are built and
+	 * looked up here, and the workers only get the JARs. A bounded number of projects is kept in flight, and the diffs
+	 * of the projects with changes are added in build order, regardless of the order in which their baselines complete.
+	 *
+	 * @throws OperationCanceledException
+	 *             if the monitor is cancelled
+	 */
+	private void analyse(List<Project> orderedProjects, List<ProjectDiff> projectDiffs, IProgressMonitor mon) throws Exception {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		int window = threads * 2;
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new BaselineThreadFactory());
+		LinkedList<PendingProject> pending = new LinkedList<PendingProject>();
+		try {
+			for (Project project : orderedProjects) {
+				if (mon.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				IProject eProject = ReleaseUtils.getProject(project);
+				if (!isIncluded(eProject) || eProject == null || !eProject.isOpen() || !eProject.isAccessible()) {
+					mon.worked(2);
+					continue;
+				}
 
-		List<Project> outlist = new ArrayList<Project>();
-		monitor.setTaskName(Messages.calculatingBuildPath);
-		for (Project project : workspace.getAllProjects()) {
+				PendingProject pendingProject = new PendingProject(project);
+				for (Builder b : project.getBuilder(null).getSubBuilders()) {
+					mon.subTask(String.format(Messages.processingProject, b.getBsn()));
+					if (!(b instanceof ProjectBuilder)) {
+						continue;
+					}
+					ProjectBuilder builder = (ProjectBuilder) b;
+					Jar jar = null;
+					Jar currentJar;
+					try {
+						jar = DiffHelper.getBuiltJar(builder);
+						currentJar = DiffHelper.getBaselineJar(builder);
+					} catch (Exception e) {
+						if (jar != null) {
+							jar.close();
+						}
+						Activator.logError(String.format(Messages.baselineFailed, builder.getBsn()), e);
+						continue;
+					}
+					BaselineTask task = new BaselineTask(builder, jar, currentJar);
+					task.future = executor.submit(task);
+					pendingProject.baselines.add(task);
+				}
+				pending.add(pendingProject);
+				mon.worked(1);
 
-			monitor.subTask(String.format(Messages.resolvingDependenciesForProject, project.getName()));
-			Collection<Project> dependsOn = project.getDependson();
+				while (pending.size() > window) {
+					collect(pending.getFirst(), projectDiffs, mon);
+					pending.removeFirst();
+				}
+			}
+			while (!pending.isEmpty()) {
+				collect(pending.getFirst(), projectDiffs, mon);
+				pending.removeFirst();
+			}
+		} finally {
+			executor.shutdownNow();
+			// Close the JARs of the baselines that will not run
+			for (PendingProject pendingProject : pending) {
+				for (BaselineTask task : pendingProject.baselines) {
+					task.discard();
+				}
+			}
+		}
+	}
 
-			getBuildOrder(dependsOn, outlist);
+	private static void collect(PendingProject pendingProject, List<ProjectDiff> projectDiffs, IProgressMonitor mon) throws Exception {
+		List<Baseline> jarDiffs = new ArrayList<Baseline>();
+		for (BaselineTask task : pendingProject.baselines) {
+			Baseline jarDiff;
+			try {
+				jarDiff = waitFor(task.future, mon);
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (Exception e) {
+				Activator.logError(String.format(Messages.baselineFailed, task.builder.getBsn()), e);
+				jarDiff = null;
+			}
+			// The baseline has completed, so its messages can be passed on to the builder on this thread
+			task.builder.getInfo(task.reporter);
+			if (jarDiff != null && isChanged(jarDiff)) {
+				jarDiffs.add(jarDiff);
+			}
+		}
+		if (jarDiffs.size() > 0) {
+			projectDiffs.add(new ProjectDiff(pendingProject.project, jarDiffs));
+		}
+		mon.worked(1);
+	}
+
+	/**
+	 * Waits for a baseline on the job thread, which is the only thread reporting to the monitor, checking for
+	 * cancellation while waiting.
+	 */
+	private static Baseline waitFor(Future<Baseline> future, IProgressMonitor mon) throws Exception {
+		while (true) {
+			if (mon.isCanceled()) {
+				throw new OperationCanceledException();
+			}
+			try {
+				return future.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// Check for cancellation again
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof Exception ? (Exception) cause : e;
+			}
+		}
+	}
+
+	private static boolean isChanged(Baseline jarDiff) {
+		Delta delta = jarDiff.getDiff().getDelta(new Ignore() {
+            public boolean contains(Diff diff) {
+               if ("META-INF/MANIFEST.MF".equals(diff.getName())) { //$NON-NLS-1$
+                   return true;
+               }
+               if (diff.getType() == Type.HEADER && diff.getName().startsWith(Constants.BUNDLE_VERSION)) {
+                   return true;
+               }
+               return false;
+            }});
+		return delta != Delta.UNCHANGED && delta != Delta.IGNORED;
+	}
 
-			if (!outlist.contains(project)) {
+	/**
+	 * Returns the projects of the workspace in topological order of their dependencies (Kahn's algorithm), keeping
+	 * the workspace order between independent projects. Projects on a dependency cycle are reported and appended in
+	 * workspace order. The order is cached, and reused until a bnd file of the workspace changes.
+	 */
+	static List<Project> getBuildOrder(IProgressMonitor monitor,
+			Workspace workspace) throws Exception {
+
+		monitor.setTaskName(Messages.calculatingBuildPath);
+		Collection<Project> allProjects = workspace.getAllProjects();
+		Map<File,Long> stamps = getBndFileStamps(workspace, allProjects);
+
+		List<String> names;
+		synchronized (buildOrderLock) {
+			names = stamps.equals(cachedBuildOrderStamps) ? cachedBuildOrder : null;
+		}
+		if (names != null) {
+			List<Project> outlist = new ArrayList<Project>(names.size());
+			for (String name : names) {
+				Project project = workspace.getProject(name);
+				if (project == null) {
+					names = null;
+					break;
+				}
 				outlist.add(project);
 			}
-			monitor.worked(1);
+			if (names != null) {
+				monitor.worked(allProjects.size());
+				return outlist;
+			}
+		}
+
+		List<Project> outlist = sortProjects(monitor, allProjects);
+
+		names = new ArrayList<String>(outlist.size());
+		for (Project project : outlist) {
+			names.add(project.getName());
+		}
+		synchronized (buildOrderLock) {
+			cachedBuildOrder = names;
+			cachedBuildOrderStamps = stamps;
 		}
 		return outlist;
 	}
 
-	private static void getBuildOrder(Collection<Project> dependsOn,
-			List<Project> outlist) throws Exception {
+	private static List<Project> sortProjects(IProgressMonitor monitor, Collection<Project> allProjects) throws Exception {
+		// Dependency graph; a dependency may be a project that is not listed by the workspace
+		Map<Project,Integer> inDegrees = new LinkedHashMap<Project,Integer>();
+		Map<Project,List<Project>> dependents = new HashMap<Project,List<Project>>();
+		for (Project project : allProjects) {
+			monitor.subTask(String.format(Messages.resolvingDependenciesForProject, project.getName()));
+			Set<Project> dependsOn = new LinkedHashSet<Project>(project.getDependson());
+			dependsOn.remove(project);
+			for (Project dependency : dependsOn) {
+				if (!inDegrees.containsKey(dependency)) {
+					inDegrees.put(dependency, 0);
+				}
+				List<Project> list = dependents.get(dependency);
+				if (list == null) {
+					list = new ArrayList<Project>();
+					dependents.put(dependency, list);
+				}
+				list.add(project);
+			}
+			Integer inDegree = inDegrees.get(project);
+			inDegrees.put(project, (inDegree == null ? 0 : inDegree) + dependsOn.size());
+			monitor.worked(1);
+		}
+
+		LinkedList<Project> ready = new LinkedList<Project>();
+		for (Map.Entry<Project,Integer> entry : inDegrees.entrySet()) {
+			if (entry.getValue() == 0) {
+				ready.add(entry.getKey());
+			}
+		}
 
-		for (Project project : dependsOn) {
-			Collection<Project> subProjects = project.getDependson();
-			for (Project subProject : subProjects) {
-				if (!outlist.contains(subProject)) {
-					outlist.add(subProject);
+		Set<Project> outlist = new LinkedHashSet<Project>(inDegrees.size());
+		while (!ready.isEmpty()) {
+			Project project = ready.removeFirst();
+			outlist.add(project);
+			List<Project> list = dependents.get(project);
+			if (list == null) {
+				continue;
+			}
+			for (Project dependent : list) {
+				int inDegree = inDegrees.get(dependent) - 1;
+				inDegrees.put(dependent, inDegree);
+				if (inDegree == 0) {
+					ready.add(dependent);
+				}
+			}
+		}
+
+		if (outlist.size() < inDegrees.size()) {
+			List<String> cyclic = new ArrayList<String>();
+			for (Project project : inDegrees.keySet()) {
+				if (outlist.add(project)) {
+					cyclic.add(project.getName());
 				}
 			}
-            if (!outlist.contains(project)) {
-                outlist.add(project);
-            }
+			Activator.log(String.format(Messages.cyclicProjectDependencies, cyclic), IStatus.WARNING);
+		}
+		return new ArrayList<Project>(outlist);
+	}
+
+	/**
+	 * Returns the modification times of the bnd files of the workspace and its projects, including the files they
+	 * include, which determine the dependencies between the projects.
+	 */
+	private static Map<File,Long> getBndFileStamps(Workspace workspace, Collection<Project> allProjects) {
+		Map<File,Long> stamps = new HashMap<File,Long>();
+		addBndFileStamps(workspace, stamps);
+		for (Project project : allProjects) {
+			addBndFileStamps(project, stamps);
+		}
+		return stamps;
+	}
+
+	private static void addBndFileStamps(Processor processor, Map<File,Long> stamps) {
+		File propertiesFile = processor.getPropertiesFile();
+		if (propertiesFile != null) {
+			stamps.put(propertiesFile, propertiesFile.lastModified());
+		}
+		List<File> included = processor.getIncluded();
+		if (included != null) {
+			for (File file : included) {
+				stamps.put(file, file.lastModified());
+			}
 		}
 	}
 
@@ -205,4 +413,66 @@ public class WorkspaceAnalyserJob extends Job {
 	    }
 	    return projects.contains(project);
 	}
+
+	private static class PendingProject {
+		final Project project;
+		final List<BaselineTask> baselines = new ArrayList<BaselineTask>();
+
+		PendingProject(Project project) {
+			this.project = project;
+		}
+	}
+
+	/**
+	 * Baselines a JAR against the previous revision of the bundle, and closes both JARs. The builder is not thread
+	 * safe, so it is only used on the job thread; the task reports to a reporter of its own.
+	 */
+	private static class BaselineTask implements Callable<Baseline> {
+		final ProjectBuilder builder;
+		final Processor reporter = new Processor();
+		final String bsn;
+		final Jar jar;
+		final Jar currentJar;
+		final AtomicBoolean started = new AtomicBoolean();
+		Future<Baseline> future;
+
+		BaselineTask(ProjectBuilder builder, Jar jar, Jar currentJar) {
+			this.builder = builder;
+			this.bsn = builder.getBsn();
+			this.jar = jar;
+			this.currentJar = currentJar;
+		}
+
+		public Baseline call() throws Exception {
+			if (!started.compareAndSet(false, true)) {
+				return null;
+			}
+			try {
+				return DiffHelper.createBaseline(reporter, bsn, jar, currentJar);
+			} finally {
+				jar.close();
+				currentJar.close();
+			}
+		}
+
+		/**
+		 * Closes the JARs if the task has not started, and prevents it from starting.
+		 */
+		void discard() {
+			if (started.compareAndSet(false, true)) {
+				jar.close();
+				currentJar.close();
+			}
+		}
+	}
+
+	private static class BaselineThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Baseline Analyser " + count.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
@@ -18,8 +18,11 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.core.runtime.jobs.Job;
+import org.osgi.service.coordinator.Coordination;
+import org.osgi.service.coordinator.CoordinationException;
 
 import aQute.bnd.service.RepositoryPlugin;
+import bndtools.central.Central;
 import bndtools.release.api.ReleaseContext;
 import bndtools.release.nl.Messages;
 
@@ -40,24 +43,36 @@ public class WorkspaceReleaseJob extends Job {
 	protected IStatus run(IProgressMonitor monitor) {
 
 		monitor.beginTask(Messages.releasingProjects, projectDiffs.size());
-		for (ProjectDiff projectDiff : projectDiffs) {
-			if (projectDiff.isRelease()) {
 
-				RepositoryPlugin release = null;
-				if (projectDiff.getReleaseRepository() != null) {
-					release = Activator.getRepositoryPlugin(projectDiff.getReleaseRepository());
-				}
+		// Let the release repositories update their index (and commit) once for all projects
+		IStatus status = Status.OK_STATUS;
+		Coordination coordination = Central.getCoordinator().begin(WorkspaceReleaseJob.class.getName(), 0);
+		try {
+			for (ProjectDiff projectDiff : projectDiffs) {
+				if (projectDiff.isRelease()) {
+
+					RepositoryPlugin release = null;
+					if (projectDiff.getReleaseRepository() != null) {
+						release = Activator.getRepositoryPlugin(projectDiff.getReleaseRepository());
+					}
 
-				ReleaseContext context = new ReleaseContext(projectDiff.getProject(), projectDiff.getBaselines(), release, updateOnly);
-				ReleaseJob job = new ReleaseJob(context, showMessage);
-				job.setRule(ResourcesPlugin.getWorkspace().getRoot());
-				job.run(new SubProgressMonitor(monitor, 1));
+					ReleaseContext context = new ReleaseContext(projectDiff.getProject(), projectDiff.getBaselines(), release, updateOnly);
+					ReleaseJob job = new ReleaseJob(context, showMessage);
+					job.setRule(ResourcesPlugin.getWorkspace().getRoot());
+					job.run(new SubProgressMonitor(monitor, 1));
+				}
+				monitor.worked(1);
+			}
+		} finally {
+			try {
+				coordination.end();
+			} catch (CoordinationException e) {
+				status = new Status(IStatus.ERROR, Activator.PLUGIN_ID, e.getMessage(), e.getCause());
 			}
-			monitor.worked(1);
+			monitor.done();
 		}
-		monitor.done();
 
-		return Status.OK_STATUS;
+		return status;
 	}
 
 }
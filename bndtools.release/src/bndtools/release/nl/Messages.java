@@ -47,8 +47,10 @@ public class Messages extends NLS {
 
     public static String calculatingBuildPath; /* bndtools.release.WorkspaceAnalyserJob::getBuildOrder */
     public static String resolvingDependenciesForProject; /* bndtools.release.WorkspaceAnalyserJob::getBuildOrder */
+    public static String cyclicProjectDependencies; /* bndtools.release.WorkspaceAnalyserJob::getBuildOrder */
     public static String processingProjects; /* bndtools.release.WorkspaceAnalyserJob::run */
     public static String processingProject; /* bndtools.release.WorkspaceAnalyserJob::run */
+    public static String baselineFailed; /* bndtools.release.WorkspaceAnalyserJob::analyse */
     public static String releaseWorkspaceBundles; /* bndtools.release.WorkspaceAnalyserJob::run */
     public static String noBundlesRequireRelease; /* bndtools.release.WorkspaceAnalyserJob::run */
     public static String workspaceReleaseJob; /* bndtools.release.WorkspaceAnalyserJob::run */